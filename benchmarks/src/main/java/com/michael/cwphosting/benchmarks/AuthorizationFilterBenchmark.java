@@ -0,0 +1,75 @@
+package com.michael.cwphosting.benchmarks;
+
+import com.michael.cwphosting.auth.jwt.JwtTokenAuthorizationOncePerRequestFilter;
+import com.michael.cwphosting.auth.jwt.JwtUserDetails;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.jwt.VerifiedTokenCache;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
+import com.michael.cwphosting.auth.security.TokenRevocationRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One authenticated request through the access token filter, from reading the header to calling the rest of
+ * the chain. The user lookup is an in-memory stub, so this measures the filter's own cost only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthorizationFilterBenchmark {
+
+	@Param({"false", "true"})
+	public boolean stateless;
+
+	private JwtTokenAuthorizationOncePerRequestFilter filter;
+	private String authorization;
+
+	@Setup
+	public void setUp() {
+		TokenUtil tokenUtil = Fixtures.tokenUtil();
+		JwtUserDetails userDetails = new JwtUserDetails(Fixtures.user());
+		UserDetailsService userDetailsService = username -> new JwtUserDetails(Fixtures.user());
+		SecurityVersionRegistry securityVersionRegistry = new SecurityVersionRegistry(null);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(tokenUtil, meterRegistry, 10000);
+		TokenRevocationRegistry tokenRevocationRegistry = new TokenRevocationRegistry(null, tokenUtil, meterRegistry, 100000);
+		filter = new JwtTokenAuthorizationOncePerRequestFilter(tokenUtil, userDetailsService, verifiedTokenCache,
+				securityVersionRegistry, tokenRevocationRegistry, meterRegistry, stateless);
+		authorization = "Bearer " + tokenUtil.generateToken(userDetails, false);
+	}
+
+	@Benchmark
+	public MockHttpServletResponse authorizeRequest() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+		request.setServletPath("/users");
+		request.addHeader("Authorization", authorization);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		try {
+			filter.doFilter(request, response, new MockFilterChain());
+		}
+		finally {
+			SecurityContextHolder.clearContext();
+		}
+		return response;
+	}
+}
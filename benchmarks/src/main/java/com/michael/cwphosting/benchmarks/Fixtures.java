@@ -0,0 +1,47 @@
+package com.michael.cwphosting.benchmarks;
+
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.models.Address;
+import com.michael.cwphosting.auth.models.Role;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.security.PermissionRegistry;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Builds the application objects the benchmarks exercise without starting a Spring context.
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	static TokenUtil tokenUtil() {
+		TokenUtil tokenUtil = new TokenUtil();
+		ReflectionTestUtils.setField(tokenUtil, "secret", "benchmark-signing-secret-benchmark-signing-secret");
+		ReflectionTestUtils.setField(tokenUtil, "tokenExpiration", 600L);
+		ReflectionTestUtils.setField(tokenUtil, "refreshTokenExpiration", 604800L);
+		ReflectionTestUtils.setField(tokenUtil, "accountActivationExpire", 604800L);
+		tokenUtil.setSecurityVersionRegistry(new SecurityVersionRegistry(null));
+		tokenUtil.setPermissionRegistry(permissionRegistry());
+		ReflectionTestUtils.invokeMethod(tokenUtil, "init");
+		return tokenUtil;
+	}
+
+	static PermissionRegistry permissionRegistry() {
+		PermissionRegistry permissionRegistry = new PermissionRegistry(null);
+		permissionRegistry.register("USER", 0);
+		permissionRegistry.register("ADMIN", 1);
+		return permissionRegistry;
+	}
+
+	static User user() {
+		Address address = new Address("Zimbabwe", "Harare", "Address Line One", "Address Line Two", "00263");
+		User user = new User("Bench", "User", "bench@example.com", "0123456789", "$2a$10$abcdefghijklmnopqrstuv", address);
+		user.setId("61a4f0c2e4b0a1b2c3d4e5f6");
+		user.setActivationToken(null);
+		user.addRole(new Role("USER"));
+		user.addRole(new Role("ADMIN"));
+		return user;
+	}
+}
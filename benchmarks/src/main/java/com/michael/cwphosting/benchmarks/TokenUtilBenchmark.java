@@ -0,0 +1,58 @@
+package com.michael.cwphosting.benchmarks;
+
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.michael.cwphosting.auth.jwt.JwtUserDetails;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenUtilBenchmark {
+
+	private TokenUtil tokenUtil;
+	private JwtUserDetails userDetails;
+	private String accessToken;
+
+	@Setup
+	public void setUp() {
+		tokenUtil = Fixtures.tokenUtil();
+		userDetails = new JwtUserDetails(Fixtures.user());
+		accessToken = tokenUtil.generateToken(userDetails, false);
+	}
+
+	@Benchmark
+	public String generateAccessToken() {
+		return tokenUtil.generateToken(userDetails, false);
+	}
+
+	@Benchmark
+	public String generateRefreshToken() {
+		return tokenUtil.generateToken(userDetails, true);
+	}
+
+	@Benchmark
+	public DecodedJWT getDecodedToken() {
+		return tokenUtil.getDecodedToken(accessToken);
+	}
+
+	@Benchmark
+	public Claim getClaim() {
+		return tokenUtil.getClaim(accessToken, "roles");
+	}
+}
@@ -0,0 +1,66 @@
+package com.michael.cwphosting.benchmarks;
+
+import com.michael.cwphosting.auth.jwt.JwtUserDetails;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.services.UserService;
+import com.michael.cwphosting.auth.utilities.Md5Digest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.objenesis.ObjenesisStd;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserValidationBenchmark {
+
+	private UserService userService;
+	private User user;
+	private byte[] activationSeed;
+
+	@Setup
+	public void setUp() {
+		// the validators don't touch any collaborators, so skip the constructor instead of wiring eight mocks
+		userService = new ObjenesisStd().newInstance(UserService.class);
+		user = Fixtures.user();
+		activationSeed = ("Bench" + "Secret#2021" + "User").getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public boolean isValidPassword() {
+		return userService.isValidPassword("Secret#2021");
+	}
+
+	@Benchmark
+	public boolean isValidPasswordRejected() {
+		return userService.isValidPassword("secret");
+	}
+
+	@Benchmark
+	public boolean isValidEmail() {
+		return userService.isValidEmail("bench.user@example.com");
+	}
+
+	@Benchmark
+	public String md5Digest() {
+		return Md5Digest.digest(activationSeed);
+	}
+
+	@Benchmark
+	public JwtUserDetails jwtUserDetails() {
+		return new JwtUserDetails(user);
+	}
+}
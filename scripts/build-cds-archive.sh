@@ -0,0 +1,49 @@
+#!/usr/bin/env bash
+# Builds an AppCDS archive of the classes loaded while the service starts and warms up, then starts it once more from
+# the archive and prints the time to ready of both runs. CDS cannot read the jars nested in the Spring Boot jar, so the
+# jar is laid out under target/cds as plain jars with an argument file holding the class path.
+# The training run uses PROFILES (default inmemory,faststart); for production, train against the real configuration.
+# Usage: scripts/build-cds-archive.sh, then:
+#   java -XX:SharedArchiveFile=target/cds/app.jsa @target/cds/classpath.args com.michael.cwphosting.CwpHostingManagerApplication --spring.profiles.active=...
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+PORT=${PORT:-18080}
+PROFILES=${PROFILES:-inmemory,faststart}
+MAIN=com.michael.cwphosting.CwpHostingManagerApplication
+OUT=target/cds
+
+${MVN:-./mvnw} -q -B package -DskipTests
+JAR=$(ls target/cwphosting-*.jar | grep -v "original\|plain" | head -1)
+
+rm -rf "$OUT"
+mkdir -p "$OUT/exploded" "$OUT/lib"
+(cd "$OUT/exploded" && jar xf "../../../$JAR")
+cp "$OUT"/exploded/BOOT-INF/lib/*.jar "$OUT/lib/"
+jar cf "$OUT/application.jar" -C "$OUT/exploded/BOOT-INF/classes" .
+CLASSPATH_ENTRIES=("$OUT/application.jar" $(ls "$OUT"/lib/*.jar | sort))
+(IFS=:; echo "-cp ${CLASSPATH_ENTRIES[*]}") > "$OUT/classpath.args"
+rm -rf "$OUT/exploded"
+
+# starts the service with the given JVM options, waits until it is ready, stops it and prints its startup report
+run() {
+	local log=$1
+	shift
+	java "$@" ${JAVA_OPTS:-} @"$OUT/classpath.args" "$MAIN" --spring.profiles.active="$PROFILES" --server.port="$PORT" > "$log" 2>&1 &
+	local server=$!
+	for _ in $(seq 1 120); do
+		grep -q "Ready .* ms after JVM start" "$log" && break
+		kill -0 $server 2>/dev/null || break
+		sleep 1
+	done
+	kill -TERM $server 2>/dev/null || true
+	wait $server 2>/dev/null || true
+	grep -h "Ready .* ms after JVM start" "$log" | sed 's/.*: Ready/Ready/' || echo "The service did not become ready, see $log"
+}
+
+echo "== training run"
+run "$OUT/training.log" -XX:ArchiveClassesAtExit="$OUT/app.jsa"
+[ -f "$OUT/app.jsa" ] || { echo "No archive was written, see $OUT/training.log" >&2; exit 1; }
+
+echo "== from the archive"
+run "$OUT/archived.log" -XX:SharedArchiveFile="$OUT/app.jsa" -Xlog:cds=warning
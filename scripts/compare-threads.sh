@@ -0,0 +1,27 @@
+#!/usr/bin/env bash
+# Runs the login and authorized-GET mix once on Tomcat's platform worker pool and once on virtual threads.
+# Needs a Java 21 runtime on the PATH (or JAVA_HOME/bin first on it); extra arguments go to the load driver.
+# Usage: scripts/compare-threads.sh [--rate 400] [--duration 60] [--warmup 10] [--users 50]
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+if ! java -version 2>&1 | grep -qE 'version "(2[1-9]|[3-9][0-9])'; then
+	echo "Virtual threads need Java 21 or later on the PATH" >&2
+	exit 1
+fi
+
+MIX=${MIX:-login=20,get=80}
+PLATFORM_THREADS=${PLATFORM_THREADS:-200}
+
+echo "== platform threads (server.tomcat.threads.max=$PLATFORM_THREADS)"
+SERVER_ARGS="--server.tomcat.threads.max=$PLATFORM_THREADS" scripts/load-test.sh --mix "$MIX" "$@"
+mv target/load-test-server.log target/load-test-server-platform.log
+
+echo "== virtual threads"
+JAVA_OPTS="${JAVA_OPTS:-} -Djdk.tracePinnedThreads=short" SERVER_ARGS="--spring.threads.virtual.enabled=true" \
+	scripts/load-test.sh --mix "$MIX" "$@"
+mv target/load-test-server.log target/load-test-server-virtual.log
+
+if grep -q "reason:MONITOR\|<== monitors" target/load-test-server-virtual.log; then
+	echo "Pinned virtual threads were reported, see target/load-test-server-virtual.log"
+fi
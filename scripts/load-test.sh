@@ -0,0 +1,24 @@
+#!/usr/bin/env bash
+# Starts the service with the in-memory profile and replays mixed traffic against it.
+# Usage: scripts/load-test.sh [--rate 200] [--duration 60] [--warmup 10] [--users 50] [--mix login=10,refresh=15,get=70,failed=5]
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+PORT=${PORT:-18080}
+# the reactive Spring profile needs the classes and dependencies of the reactive Maven profile
+BUILD_PROFILES=""
+[[ ${PROFILES:-} == *reactive* ]] && BUILD_PROFILES="-Preactive"
+${MVN:-./mvnw} -q -B $BUILD_PROFILES package -DskipTests
+JAR=$(ls target/cwphosting-*.jar | grep -v "original\|plain" | head -1)
+
+java ${JAVA_OPTS:-} -jar "$JAR" --spring.profiles.active="${PROFILES:-inmemory}" --server.port="$PORT" ${SERVER_ARGS:-} > target/load-test-server.log 2>&1 &
+SERVER=$!
+trap 'kill $SERVER 2>/dev/null; wait $SERVER 2>/dev/null || true' EXIT
+
+for _ in $(seq 1 120); do
+	curl -sf "http://127.0.0.1:$PORT/actuator/health" > /dev/null && break
+	sleep 1
+done
+
+${MVN:-./mvnw} -q -B exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.michael.cwphosting.loadtest.LoadDriver \
+	-Dexec.args="--url http://127.0.0.1:$PORT $*"
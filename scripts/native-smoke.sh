@@ -0,0 +1,104 @@
+#!/usr/bin/env bash
+# Builds the native executable, boots it against the in-memory stand-ins (in-process Mongo, mail discarded), signs up
+# a user, logs in as the seeded admin and lists users with the token. Records the time until the readiness probe answers
+# and the resident memory of the native binary and, for comparison, of the JVM jar from the same build, in
+# target/native-smoke.txt.
+# The image's reflection and resource hints are kept in src/main/resources/META-INF/native-image/com.michael/cwphosting.
+# With RECORD=1 the jar is first run through the same checks under GraalVM's tracing agent, which merges what it sees
+# into those files, leaving out calls from the libraries Spring Native already covers (scripts/native-agent-filter.json);
+# review the result with git diff before committing it.
+# Needs GraalVM 21.3+ with native-image on JAVA_HOME for the build; SKIP_BUILD=1 reuses target/cwphosting.
+# Usage: scripts/native-smoke.sh   (MODES="native" skips the JVM comparison run)
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+PORT=${PORT:-18080}
+MODES=${MODES:-native jvm}
+RESULTS=target/native-smoke.txt
+HINTS=src/main/resources/META-INF/native-image/com.michael/cwphosting
+
+now_ms() {
+	date +%s%3N
+}
+
+# starts the service with the given command, runs the smoke checks against it and records startup time and memory
+smoke() {
+	local mode=$1
+	shift
+	local log=target/native-smoke-$mode.log
+	local start
+	start=$(now_ms)
+	"$@" --spring.profiles.active=inmemory --server.port="$PORT" --management.endpoint.health.probes.enabled=true > "$log" 2>&1 &
+	local server=$!
+	trap "kill $server 2>/dev/null || true" EXIT
+
+	local ready=""
+	for _ in $(seq 1 1200); do
+		if curl -sf "http://127.0.0.1:$PORT/actuator/health/readiness" > /dev/null; then
+			ready=$(( $(now_ms) - start ))
+			break
+		fi
+		kill -0 $server 2>/dev/null || break
+		sleep 0.05
+	done
+	if [ -z "$ready" ]; then
+		echo "$mode: the service did not come up, see $log" >&2
+		exit 1
+	fi
+	local rss_ready
+	rss_ready=$(awk '/VmRSS/ {print $2}' /proc/$server/status)
+
+	local token
+	token=$(curl -sf -X POST "http://127.0.0.1:$PORT/login" -d "email=admin@example.com&password=password" \
+		| sed -n 's/.*"accessToken":"\([^"]*\)".*/\1/p')
+	if [ -z "$token" ]; then
+		echo "$mode: login as the seeded admin failed, see $log" >&2
+		exit 1
+	fi
+	local status
+	status=$(curl -s -o /dev/null -w "%{http_code}" -X POST "http://127.0.0.1:$PORT/user" -H "Content-Type: application/json" \
+		-d "{\"firstName\":\"Smoke\",\"email\":\"smoke-$mode@example.com\",\"password\":\"Secret#123\"}")
+	if [ "$status" != "201" ]; then
+		echo "$mode: sign-up answered $status, see $log" >&2
+		exit 1
+	fi
+	status=$(curl -s -o /dev/null -w "%{http_code}" -H "Authorization: Bearer $token" "http://127.0.0.1:$PORT/users")
+	if [ "$status" != "200" ]; then
+		echo "$mode: GET /users answered $status, see $log" >&2
+		exit 1
+	fi
+	if ! grep -q "Compiled email templates \[[a-z]" "$log"; then
+		echo "$mode: no email templates were compiled, see $log" >&2
+		exit 1
+	fi
+
+	local rss_after peak
+	rss_after=$(awk '/VmRSS/ {print $2}' /proc/$server/status)
+	peak=$(awk '/VmHWM/ {print $2}' /proc/$server/status)
+	kill -TERM $server
+	wait $server 2>/dev/null || true
+	trap - EXIT
+
+	local line="$mode: ready after ${ready} ms, RSS ${rss_ready} kB when up, ${rss_after} kB after sign-up, login and GET /users, peak ${peak} kB"
+	echo "$line"
+	[ "$mode" = agent ] || echo "$(date -u +%FT%TZ) $line" >> "$RESULTS"
+}
+
+if [ -z "${SKIP_BUILD:-}" ]; then
+	if [ -n "${RECORD:-}" ]; then
+		${MVN:-./mvnw} -q -B -Pnative -DskipTests -DskipNativeBuild=true package
+		# the AOT-generated context is what the image runs, so trace that rather than the reflective start-up
+		smoke agent "$JAVA_HOME/bin/java" -DspringAot=true \
+			-agentlib:native-image-agent=config-merge-dir=$HINTS,caller-filter-file=scripts/native-agent-filter.json \
+			-jar "$(ls target/cwphosting-*-exec.jar)"
+	fi
+	${MVN:-./mvnw} -q -B -Pnative -DskipTests package
+fi
+JAR=$(ls target/cwphosting-*-exec.jar 2>/dev/null || ls target/cwphosting-*.jar | grep -v "original\|plain" | head -1)
+
+for mode in $MODES; do
+	case $mode in
+		native) smoke native target/cwphosting -Dspring.devtools.restart.enabled=false ;;
+		jvm) smoke jvm java ${JAVA_OPTS:-} -jar "$JAR" ;;
+	esac
+done
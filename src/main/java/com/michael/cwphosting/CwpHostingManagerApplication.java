@@ -5,57 +5,65 @@ import com.michael.cwphosting.auth.models.Role;
 import com.michael.cwphosting.auth.models.User;
 import com.michael.cwphosting.auth.repository.RoleRepository;
 import com.michael.cwphosting.auth.repository.UserRepository;
+import com.michael.cwphosting.auth.security.BoundedPasswordEncoder;
+import com.michael.cwphosting.auth.security.PermissionRegistry;
 import com.michael.cwphosting.auth.services.UserService;
+import com.michael.cwphosting.startup.StartupReport;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.List;
-import java.util.Optional;
 
 @SpringBootApplication
+@EnableScheduling
 @Slf4j
 public class CwpHostingManagerApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(CwpHostingManagerApplication.class, args);
+		SpringApplication application = new SpringApplication(CwpHostingManagerApplication.class);
+		application.addListeners(new StartupReport());
+		application.run(args);
 	}
 
 	@Bean
-	PasswordEncoder passwordEncoder(){
-		return new BCryptPasswordEncoder();
+	BoundedPasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+										   @Value("${spring.user.password.hashing.pool-size:0}") int poolSize,
+										   @Value("${spring.user.password.hashing.queue-capacity:64}") int queueCapacity,
+										   @Value("${spring.user.password.hashing.timeout:10000}") long timeout){
+		if(poolSize <= 0) poolSize = Runtime.getRuntime().availableProcessors();
+		return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), poolSize, queueCapacity, timeout, meterRegistry);
 	}
 
 	@Bean
-	CommandLineRunner runner(UserService userService, RoleRepository roleRepository){
+	CommandLineRunner runner(UserService userService, RoleRepository roleRepository, PermissionRegistry permissionRegistry, MongoTemplate mongoTemplate){
 		return args -> {
 
-			String roleName = "USER";
-			Optional<Role> role = roleRepository.findRoleByName(roleName);
-			if(role.isEmpty()){
-				roleRepository.insert(new Role(roleName));
-				role = roleRepository.findRoleByName(roleName);
-			}
-
-			roleName = "ADMIN";
-			Optional<Role> role2 = roleRepository.findRoleByName(roleName);
-			if(role2.isEmpty()){
-				roleRepository.insert(new Role(roleName));
-				role2 = roleRepository.findRoleByName(roleName);
+			// one round trip creates whichever default roles are missing
+			BulkOperations seed = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Role.class);
+			for(String roleName : List.of("USER", "ADMIN")){
+				seed.upsert(new Query(Criteria.where("name").is(roleName)), new Update().setOnInsert("name", roleName));
 			}
+			seed.execute();
+			permissionRegistry.refresh();
 
 			if(userService.countUsers()==0){
 				Address address = new Address("Zimbabwe", "Harare", "Address Line One", "Address Line Two", "00263");
 				User newUser = new User("Admin", "User", "admin@example.com", "0123456789", "password", address);
-				if(role.isPresent()) newUser.addRole(role.get());
-				if(role2.isPresent()) newUser.addRole(role2.get());
+				roleRepository.findAll().stream()
+						.filter(role -> role.getName().equals("USER") || role.getName().equals("ADMIN"))
+						.forEach(newUser::addRole);
 				userService.saveUser(newUser);
 			}
 
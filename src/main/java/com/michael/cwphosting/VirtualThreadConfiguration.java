@@ -0,0 +1,42 @@
+package com.michael.cwphosting;
+
+import com.michael.cwphosting.auth.utilities.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs Tomcat request handling and the {@code @Scheduled} jobs on virtual threads, so a request blocked on Mongo or
+ * SMTP no longer holds one of a fixed number of worker threads. Needs a Java 21 runtime; BCrypt keeps its own bounded
+ * platform pool because it is CPU bound.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+@Slf4j
+public class VirtualThreadConfiguration {
+
+	@Bean(destroyMethod = "shutdownNow")
+	ExecutorService virtualRequestExecutor() {
+		log.info("Handling requests on virtual threads");
+		return VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+	}
+
+	@Bean
+	TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualRequestExecutor) {
+		return protocolHandler -> protocolHandler.setExecutor(virtualRequestExecutor);
+	}
+
+	@Bean
+	ThreadPoolTaskScheduler taskScheduler(@Value("${spring.task.scheduling.pool.size:1}") int poolSize) {
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setPoolSize(poolSize);
+		scheduler.setThreadFactory(VirtualThreads.factory("scheduling-virtual-"));
+		return scheduler;
+	}
+}
@@ -3,9 +3,11 @@ package com.michael.cwphosting.auth.controllers;
 import com.michael.cwphosting.auth.jwt.resource.JwtMessageResponse;
 import com.michael.cwphosting.auth.jwt.resource.JwtTokenResponse;
 import com.michael.cwphosting.auth.jwt.resource.JwtUsernameObjectRequest;
+import com.michael.cwphosting.auth.security.TokenRevocationRegistry;
 import com.michael.cwphosting.auth.services.RefreshTokenService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -17,18 +19,20 @@ import java.io.IOException;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 
 @RestController
+@Profile("!reactive")
 @AllArgsConstructor
 @Slf4j
 @RequestMapping("/token")
 public class AuthController {
 
 	private final RefreshTokenService refreshTokenService;
+	private final TokenRevocationRegistry tokenRevocationRegistry;
 
 	@GetMapping("/refresh")
 	public ResponseEntity<?> refreshToken(HttpServletRequest request, HttpServletResponse response) throws IOException {
 		try {
 			String authorizationHeader = request.getHeader(AUTHORIZATION);
-			if(authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) throw new Exception("A valid autorization header is required");
+			if(authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) throw new Exception("A valid autorization header is required");
 			String token = authorizationHeader.substring("Bearer ".length());
 			String accessToken = refreshTokenService.refreshToken(token);
 			response.setHeader("access_token", accessToken);
@@ -43,9 +47,9 @@ public class AuthController {
 	public ResponseEntity<?> revokeToken(HttpServletRequest request, HttpServletResponse response) throws IOException {
 		try {
 			String authorizationHeader = request.getHeader(AUTHORIZATION);
-			if(authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) throw new IOException("A valid autrhorization token is required");
+			if(authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) throw new IOException("A valid autrhorization token is required");
 			String token = authorizationHeader.substring("Bearer ".length());
-			boolean revoked = refreshTokenService.revokeRefreshToken(token);
+			boolean revoked = tokenRevocationRegistry.revoke(token) || refreshTokenService.revokeRefreshToken(token);
 			if(!revoked) throw new Exception("Unable to validate token. No token revoked.");
 			return ResponseEntity.ok(new JwtMessageResponse("Token revoked successfully"));
 		}
@@ -55,11 +59,16 @@ public class AuthController {
 	}
 
 	@PostMapping("/revokeall")
-	public ResponseEntity<?> revokeAllTokens(@RequestBody JwtUsernameObjectRequest logoutAllRequest, HttpServletResponse response) throws IOException {
+	public ResponseEntity<?> revokeAllTokens(@RequestBody JwtUsernameObjectRequest logoutAllRequest, HttpServletRequest request) throws IOException {
 		try {
-			if(logoutAllRequest.getUsername().length()>0) {
-				boolean revoked = refreshTokenService.revokeAllTokens(logoutAllRequest.getUsername());
-				if (!revoked) throw new Exception("You do not have any active refresh tokens.");
+			if(logoutAllRequest.getUsername() != null && logoutAllRequest.getUsername().length()>0) {
+				String authorizationHeader = request.getHeader(AUTHORIZATION);
+				if(authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")
+						|| !tokenRevocationRegistry.mayRevokeAll(authorizationHeader.substring("Bearer ".length()), logoutAllRequest.getUsername())) {
+					return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new JwtMessageResponse("An access token of this user or of an administrator is required"));
+				}
+				tokenRevocationRegistry.revokeAll(logoutAllRequest.getUsername());
+				refreshTokenService.revokeAllTokens(logoutAllRequest.getUsername());
 				return ResponseEntity.ok(new JwtMessageResponse("All access tokens have been revoked"));
 			}
 			else{
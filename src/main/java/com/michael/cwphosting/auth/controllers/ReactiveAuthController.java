@@ -0,0 +1,100 @@
+package com.michael.cwphosting.auth.controllers;
+
+import com.michael.cwphosting.auth.exceptions.PasswordHashingRejectedException;
+import com.michael.cwphosting.auth.jwt.resource.JwtMessageResponse;
+import com.michael.cwphosting.auth.jwt.resource.JwtTokenResponse;
+import com.michael.cwphosting.auth.jwt.resource.JwtUsernameObjectRequest;
+import com.michael.cwphosting.auth.security.TokenRevocationRegistry;
+import com.michael.cwphosting.auth.services.ReactiveLoginService;
+import com.michael.cwphosting.auth.services.ReactiveRefreshTokenService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
+
+/**
+ * The login and token endpoints for the {@code reactive} profile. Same paths, parameters and responses as
+ * {@code JwtAuthenticationFilter} and {@link AuthController}.
+ */
+@RestController
+@Profile("reactive")
+@AllArgsConstructor
+@Slf4j
+public class ReactiveAuthController {
+
+	private final ReactiveLoginService loginService;
+	private final ReactiveRefreshTokenService refreshTokenService;
+	private final TokenRevocationRegistry tokenRevocationRegistry;
+
+	@PostMapping(value = "${jwt.get.token.uri}", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+	public Mono<ResponseEntity<?>> login(ServerWebExchange exchange) {
+		InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+		String ipAddress = remoteAddress == null ? null : remoteAddress.getAddress().getHostAddress();
+		return exchange.getFormData()
+				.flatMap(form -> loginService.login(form.getFirst("email"), form.getFirst("password"), ipAddress))
+				.<ResponseEntity<?>>map(tokens -> ResponseEntity.ok()
+						.header("access_token", tokens.get("accessToken"))
+						.header("refresh_token", tokens.get("refreshToken"))
+						.body(tokens))
+				.onErrorResume(PasswordHashingRejectedException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+						.header(RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+						.header("message", e.getMessage())
+						.body(Map.of("message", e.getMessage()))))
+				.onErrorResume(AuthenticationException.class, e -> Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN)
+						.header("message", e.getMessage())
+						.body(Map.of("message", e.getMessage()))));
+	}
+
+	@GetMapping("/token/refresh")
+	public Mono<ResponseEntity<?>> refreshToken(@RequestHeader(value = AUTHORIZATION, required = false) String authorizationHeader) {
+		if(authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) return badRequest("A valid autorization header is required");
+		String token = authorizationHeader.substring("Bearer ".length());
+		return refreshTokenService.refreshToken(token)
+				.<ResponseEntity<?>>map(accessToken -> ResponseEntity.ok().header("access_token", accessToken).body(new JwtTokenResponse(accessToken)))
+				.onErrorResume(e -> badRequest(e.getMessage()));
+	}
+
+	@GetMapping("/token/revoke")
+	public Mono<ResponseEntity<?>> revokeToken(@RequestHeader(value = AUTHORIZATION, required = false) String authorizationHeader) {
+		if(authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) return badRequest("A valid autrhorization token is required");
+		String token = authorizationHeader.substring("Bearer ".length());
+		return Mono.fromCallable(() -> tokenRevocationRegistry.revoke(token))
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMap(revoked -> revoked ? Mono.just(true) : refreshTokenService.revokeRefreshToken(token))
+				.flatMap(revoked -> revoked
+						? Mono.<ResponseEntity<?>>just(ResponseEntity.ok(new JwtMessageResponse("Token revoked successfully")))
+						: badRequest("Unable to validate token. No token revoked."));
+	}
+
+	@PostMapping("/token/revokeall")
+	public Mono<ResponseEntity<?>> revokeAllTokens(@RequestBody JwtUsernameObjectRequest logoutAllRequest,
+												   @RequestHeader(value = AUTHORIZATION, required = false) String authorizationHeader) {
+		String username = logoutAllRequest.getUsername();
+		if(username == null || username.length() == 0) return badRequest("A valid username is required");
+		if(authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")
+				|| !tokenRevocationRegistry.mayRevokeAll(authorizationHeader.substring("Bearer ".length()), username)) {
+			return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body(new JwtMessageResponse("An access token of this user or of an administrator is required")));
+		}
+		return Mono.fromRunnable(() -> tokenRevocationRegistry.revokeAll(username))
+				.subscribeOn(Schedulers.boundedElastic())
+				.then(refreshTokenService.revokeAllTokens(username))
+				.<ResponseEntity<?>>thenReturn(ResponseEntity.ok(new JwtMessageResponse("All access tokens have been revoked")));
+	}
+
+	private static Mono<ResponseEntity<?>> badRequest(String message) {
+		return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(message)));
+	}
+}
@@ -0,0 +1,71 @@
+package com.michael.cwphosting.auth.controllers;
+
+import com.michael.cwphosting.auth.jwt.resource.JwtPasswordResetObjectRequest;
+import com.michael.cwphosting.auth.jwt.resource.JwtUsernameObjectRequest;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.services.UserService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Account management for the {@code reactive} profile. Sign-up, activation and password resets hash passwords and
+ * go through the blocking {@link UserService}, so each request is handed to {@link UserController}'s logic on the
+ * bounded elastic scheduler and never runs on a Netty event loop.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/user")
+public class ReactiveUserController {
+
+	private final UserController userController;
+
+	public ReactiveUserController(UserService userService, PasswordEncoder passwordEncoder) {
+		this.userController = new UserController(userService, passwordEncoder);
+	}
+
+	@GetMapping
+	public ResponseEntity<?> getUserCreateFields(){
+		return userController.getUserCreateFields();
+	}
+
+	@PostMapping
+	public Mono<ResponseEntity<?>> createUserAccount(@RequestBody User data, UriComponentsBuilder uriBuilder) {
+		return blocking(() -> userController.createUserAccount(data, uriBuilder));
+	}
+
+	@PostMapping("activation-token/resend")
+	public Mono<ResponseEntity<?>> resendActivationToken(@RequestBody JwtUsernameObjectRequest request){
+		return blocking(() -> userController.resendActivationToken(request));
+	}
+
+	@PostMapping("forgotten-password")
+	public Mono<ResponseEntity<?>> sendForgottenPasswordToken(@RequestBody JwtUsernameObjectRequest request){
+		return blocking(() -> userController.sendForgottenPasswordToken(request));
+	}
+
+	@GetMapping("confirm-account")
+	public Mono<ResponseEntity<?>> confirmAccount(@RequestParam(name = "token", required = true) String token){
+		return blocking(() -> userController.confirmAccount(token));
+	}
+
+	@PostMapping("reset-password")
+	public Mono<ResponseEntity<?>> resetPassword(@RequestBody JwtPasswordResetObjectRequest data){
+		return blocking(() -> userController.resetPassword(data));
+	}
+
+	@GetMapping("reset-password")
+	public ResponseEntity<?> getPasswordResetFields(){
+		return userController.getPasswordResetFields();
+	}
+
+	private static Mono<ResponseEntity<?>> blocking(Callable<ResponseEntity<?>> handler) {
+		return Mono.fromCallable(handler).subscribeOn(Schedulers.boundedElastic());
+	}
+}
@@ -0,0 +1,61 @@
+package com.michael.cwphosting.auth.controllers;
+
+import com.michael.cwphosting.auth.jwt.resource.JwtMessageResponse;
+import com.michael.cwphosting.auth.jwt.resource.UserListRequest;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.models.UserSummary;
+import com.michael.cwphosting.auth.services.UserListingServiceInterface;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+
+@RestController
+@Profile("reactive")
+@RequestMapping("/users")
+@AllArgsConstructor
+public class ReactiveUsersController {
+
+	private final UserListingServiceInterface userListingService;
+	private final ReactiveMongoTemplate mongoTemplate;
+
+	@GetMapping
+	public Mono<ResponseEntity<?>> getUsers(UserListRequest request){
+		Query query;
+		try {
+			query = userListingService.pageQuery(request);
+		}
+		catch (IllegalArgumentException e) {
+			return Mono.just(ResponseEntity.status(BAD_REQUEST).body(new JwtMessageResponse(e.getMessage())));
+		}
+		return mongoTemplate.find(query, UserSummary.class, mongoTemplate.getCollectionName(User.class))
+				.collectList()
+				.map(users -> ResponseEntity.ok(userListingService.toPage(request, users)));
+	}
+
+	@GetMapping("/export")
+	public ResponseEntity<?> exportUsers(UserListRequest request){
+		Query query;
+		try {
+			query = userListingService.exportQuery(request);
+		}
+		catch (IllegalArgumentException e) {
+			return ResponseEntity.status(BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+		}
+		Flux<UserSummary> users = mongoTemplate.find(query, UserSummary.class, mongoTemplate.getCollectionName(User.class));
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.header(CONTENT_DISPOSITION, "attachment; filename=\"users.ndjson\"")
+				.body(users);
+	}
+}
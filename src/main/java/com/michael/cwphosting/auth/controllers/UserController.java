@@ -1,6 +1,7 @@
 package com.michael.cwphosting.auth.controllers;
 
 import com.michael.cwphosting.auth.exceptions.InvalidPasswordException;
+import com.michael.cwphosting.auth.exceptions.PasswordHashingRejectedException;
 import com.michael.cwphosting.auth.exceptions.UserNotFoundAuthenticationException;
 import com.michael.cwphosting.auth.jwt.resource.JwtMessageResponse;
 import com.michael.cwphosting.auth.jwt.resource.JwtPasswordResetObjectRequest;
@@ -10,13 +11,14 @@ import com.michael.cwphosting.auth.services.UserService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.net.URI;
 import java.time.LocalDateTime;
@@ -24,6 +26,7 @@ import java.util.Map;
 import java.util.UUID;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/user")
 @AllArgsConstructor
 @Slf4j
@@ -42,19 +45,19 @@ public class UserController {
 			return ResponseEntity.ok(new User());
 		}
 		catch (Exception e){
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+			return errorResponse(e);
 		}
 	}
 
 	@PostMapping
-	public ResponseEntity<?> createUserAccount(HttpServletRequest request, @RequestBody User data) {
+	public ResponseEntity<?> createUserAccount(@RequestBody User data, UriComponentsBuilder uriBuilder) {
 		try {
 			User user = userService.signUpUser(data);
-			URI uri = ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(user.getId()).toUri();
+			URI uri = uriBuilder.path("/user/{id}").buildAndExpand(user.getId()).toUri();
 			return ResponseEntity.created(uri).build();
 		}
 		catch (Exception e){
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+			return errorResponse(e);
 		}
 	}
 
@@ -64,28 +67,28 @@ public class UserController {
 			User user = userService.getUser(request.getUsername());
 			if (user == null)
 				throw new UserNotFoundAuthenticationException("A valid username/email address is required");
-			userService.sendConfirmationMail(user.getEmail(), user.getActivationToken(), user.getFirstName());
+			String token = userService.renewActivationToken(user.getEmail());
+			if (token == null) throw new Exception("This account has already been activated");
+			userService.sendConfirmationMail(user.getEmail(), token, user.getFirstName());
 			return ResponseEntity.ok(new JwtMessageResponse("An account activation email has been sent to your email address"));
 		}
 		catch (Exception e){
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+			return errorResponse(e);
 		}
 	}
 
 	@PostMapping("forgotten-password")
 	public ResponseEntity<?> sendForgottenPasswordToken(@RequestBody JwtUsernameObjectRequest request){
 		try {
-			User user = userService.getUser(request.getUsername());
-			if (user == null) throw new UserNotFoundAuthenticationException("A valid username/email address is required");
 			String token = UUID.randomUUID().toString();
-			user.setForgottenPasswordToken(token);
-			user.setForgottenPasswordTokenExpire(LocalDateTime.now().plusSeconds(userService.getForgottenPasswordExpire()));
-			userService.updateUser(user);
+			LocalDateTime expires = LocalDateTime.now().plusSeconds(userService.getForgottenPasswordExpire());
+			User user = userService.setForgottenPasswordToken(request.getUsername(), token, expires);
+			if (user == null) throw new UserNotFoundAuthenticationException("A valid username/email address is required");
 			userService.sendPasswordResetMail(user.getEmail(), token, user.getFirstName(), user.getForgottenPasswordTokenExpire());
 			return ResponseEntity.ok(new JwtMessageResponse("A password reset email has been sent to your email address."));
 		}
 		catch (Exception e){
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+			return errorResponse(e);
 		}
 	}
 
@@ -93,19 +96,11 @@ public class UserController {
 	public ResponseEntity<?> confirmAccount(@RequestParam(name = "token", required = true) String token){
 		try {
 			if (token == null || token.isEmpty()) throw new IOException("A valid activation token is required");
-			User user = userService.findUserByActivationToken(token);
-			if (user == null) throw new UserNotFoundAuthenticationException("Unable to find user with submitted activation token.");
-			if (user.getActivationToken().equals(token)) {
-				user.setActivationToken(null);
-				userService.updateUser(user);
-				return ResponseEntity.ok(new JwtMessageResponse("Account activated successfully"));
-			}
-			else {
-				throw new Exception("The submitted token is not valid");
-			}
+			if (!userService.activateAccount(token)) throw new UserNotFoundAuthenticationException("Unable to find user with submitted activation token.");
+			return ResponseEntity.ok(new JwtMessageResponse("Account activated successfully"));
 		}
 		catch (Exception e){
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+			return errorResponse(e);
 		}
 	}
 
@@ -115,14 +110,12 @@ public class UserController {
 			if (data.getToken() == null || data.getToken().isEmpty()) throw new IOException("A valid forgotten password token is required");
 			User user = userService.findUserByForgottenPasswordToken(data.getToken());
 			if (user == null) throw new UserNotFoundAuthenticationException("Unable to find user with submitted password reset token.");
-			if (user.getForgottenPasswordToken().equals(data.getToken()) && user.getForgottenPasswordTokenExpire().isAfter(LocalDateTime.now()) ) {
+			if (user.getForgottenPasswordTokenExpire() != null && user.getForgottenPasswordTokenExpire().isAfter(LocalDateTime.now()) ) {
 
 				if( !data.getPassword().equals(data.getPasswordConfirm()) ) throw new InvalidPasswordException("The submitted passwords do not match");
 				if(!userService.isValidPassword(data.getPassword())) throw new InvalidPasswordException(userService.getPasswordValidationMessage());
 
-				user.setForgottenPasswordToken(null);
-				user.setPassword( data.getPassword() );
-				userService.updateUser(user);
+				if (!userService.resetPassword(user.getEmail(), data.getToken(), data.getPassword())) throw new Exception("The submitted token is not valid");
 				return ResponseEntity.ok(new JwtMessageResponse("Account password has been reset successfully"));
 			}
 			else {
@@ -130,7 +123,7 @@ public class UserController {
 			}
 		}
 		catch (Exception e){
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+			return errorResponse(e);
 		}
 	}
 
@@ -140,8 +133,20 @@ public class UserController {
 			return ResponseEntity.ok(new JwtPasswordResetObjectRequest());
 		}
 		catch (Exception e){
-			return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+			return errorResponse(e);
+		}
+	}
+
+	/**
+	 * 429 with {@code Retry-After} when the password hashing pool turned the request away, 400 for anything else.
+	 */
+	private static ResponseEntity<?> errorResponse(Exception e) {
+		if (e instanceof PasswordHashingRejectedException) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(((PasswordHashingRejectedException) e).getRetryAfterSeconds()))
+					.body(new JwtMessageResponse(e.getMessage()));
 		}
+		return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
 	}
 
 }
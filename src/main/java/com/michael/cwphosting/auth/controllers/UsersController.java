@@ -1,24 +1,115 @@
 package com.michael.cwphosting.auth.controllers;
 
-import com.michael.cwphosting.auth.models.User;
-import com.michael.cwphosting.auth.repository.UserRepository;
+import com.michael.cwphosting.auth.jwt.resource.JwtMessageResponse;
+import com.michael.cwphosting.auth.jwt.resource.UserListRequest;
+import com.michael.cwphosting.auth.services.UserImportServiceInterface;
+import com.michael.cwphosting.auth.services.UserListingServiceInterface;
 import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.VARY;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/users")
 @AllArgsConstructor
+@Slf4j
 public class UsersController {
 
-	private final UserRepository userRepository;
+	private final UserListingServiceInterface userListingService;
+	private final UserImportServiceInterface userImportService;
 
 	@GetMapping
-	public List<User> getUsers(){
-		List<User> users = userRepository.findAll();
-		return users;
+	public ResponseEntity<?> getUsers(UserListRequest request){
+		try {
+			return ResponseEntity.ok(userListingService.listUsers(request));
+		}
+		catch (IllegalArgumentException e) {
+			return ResponseEntity.status(BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+		}
+	}
+
+	/**
+	 * Streams the users straight to the response, so an invalid request is rejected before anything is written and
+	 * answered by {@link #invalidRequest}.
+	 */
+	@GetMapping("/export")
+	public void exportUsers(UserListRequest request, @RequestHeader(value = ACCEPT_ENCODING, required = false) String acceptEncoding,
+							HttpServletResponse response) throws IOException {
+		userListingService.validateFields(request.getFields());
+		boolean gzip = acceptsGzip(acceptEncoding);
+		response.setContentType("application/x-ndjson");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader(CONTENT_DISPOSITION, "attachment; filename=\"users.ndjson\"");
+		response.setHeader(VARY, ACCEPT_ENCODING);
+		if (gzip) response.setHeader(CONTENT_ENCODING, "gzip");
+
+		OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192, true) : response.getOutputStream();
+		long exported = userListingService.exportUsers(request, out);
+		out.close();
+		log.info("Exported {} users", exported);
+	}
+
+	@PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+	public ResponseEntity<?> importUsers(@RequestHeader(CONTENT_TYPE) String contentType, HttpServletRequest request) throws IOException {
+		UserImportServiceInterface.Format format = contentType.startsWith("text/csv")
+				? UserImportServiceInterface.Format.CSV : UserImportServiceInterface.Format.NDJSON;
+		try {
+			return ResponseEntity.ok(userImportService.importUsers(request.getInputStream(), format));
+		}
+		catch (IllegalArgumentException e) {
+			return ResponseEntity.status(BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+		}
+	}
+
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<?> invalidRequest(IllegalArgumentException e) {
+		return ResponseEntity.status(BAD_REQUEST).body(new JwtMessageResponse(e.getMessage()));
+	}
+
+	/**
+	 * Whether an {@code Accept-Encoding} header allows gzip: listed as {@code gzip} or {@code x-gzip}, or covered by
+	 * {@code *}, with a q-value above zero. {@code gzip;q=0} refuses it.
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) return false;
+		boolean wildcard = false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim();
+			double quality = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (!parameter.startsWith("q=")) continue;
+				try {
+					quality = Double.parseDouble(parameter.substring(2).trim());
+				}
+				catch (NumberFormatException e) {
+					quality = 0;
+				}
+			}
+			if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) return quality > 0;
+			if (name.equals("*")) wildcard = quality > 0;
+		}
+		return wildcard;
 	}
 }
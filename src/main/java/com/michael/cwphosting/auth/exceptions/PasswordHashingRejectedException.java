@@ -0,0 +1,16 @@
+package com.michael.cwphosting.auth.exceptions;
+
+import org.springframework.security.core.AuthenticationException;
+
+public class PasswordHashingRejectedException extends AuthenticationException {
+	private final long retryAfterSeconds;
+
+	public PasswordHashingRejectedException(String msg, long retryAfterSeconds) {
+		super(msg);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
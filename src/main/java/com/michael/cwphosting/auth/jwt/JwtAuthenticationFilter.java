@@ -3,11 +3,15 @@ package com.michael.cwphosting.auth.jwt;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.michael.cwphosting.auth.exceptions.AccountSuspendedAuthenticationException;
 import com.michael.cwphosting.auth.exceptions.LoginAttemptsExeededException;
+import com.michael.cwphosting.auth.exceptions.PasswordHashingRejectedException;
 import com.michael.cwphosting.auth.exceptions.UserNotFoundAuthenticationException;
 import com.michael.cwphosting.auth.models.User;
 //import com.michael.cwphosting.auth.security.SecretConfig;
 import com.michael.cwphosting.auth.services.RefreshTokenService;
 import com.michael.cwphosting.auth.services.UserService;
+import com.michael.cwphosting.auth.utilities.ResponseBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -36,21 +40,41 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 	private final TokenUtil tokenUtil;
 	private final UserService userDetailsService;
 	private final RefreshTokenService refreshTokenService;
+	private final MeterRegistry meterRegistry;
+	private final Timer tokenIssueTimer;
 	private JwtUserDetails userDetails;
 
-	public JwtAuthenticationFilter(AuthenticationManager authenticationManager, TokenUtil tokenUtil, UserService userDetailService, RefreshTokenService refreshTokenService) {
+	public JwtAuthenticationFilter(AuthenticationManager authenticationManager, TokenUtil tokenUtil, UserService userDetailService, RefreshTokenService refreshTokenService,
+								   MeterRegistry meterRegistry) {
 		this.authenticationManager = authenticationManager;
 		this.tokenUtil = tokenUtil;
 		this.userDetailsService = userDetailService;
 		this.refreshTokenService = refreshTokenService;
+		this.meterRegistry = meterRegistry;
+		this.tokenIssueTimer = Timer.builder("auth.login.tokens").register(meterRegistry);
 	}
 
 	@Override
 	public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) throws AuthenticationException {
+		Timer.Sample sample = Timer.start(meterRegistry);
+		String outcome = "success";
+		try {
+			return authenticate(request);
+		}
+		catch (AuthenticationException e) {
+			outcome = e.getClass().getSimpleName();
+			throw e;
+		}
+		finally {
+			sample.stop(Timer.builder("auth.login.attempt").tag("outcome", outcome).register(meterRegistry));
+		}
+	}
+
+	private Authentication authenticate(HttpServletRequest request) throws AuthenticationException {
 		String username = request.getParameter("email");
 		String password = request.getParameter("password");
-		if( userDetailsService.loginAttemptsExceeded(username) ){
-			int minutes = userDetailsService.getWaitTime(username);
+		if( userDetailsService.loginAttemptsExceeded(username, request.getRemoteAddr()) ){
+			int minutes = userDetailsService.getWaitTime(username, request.getRemoteAddr());
 			String s = minutes==1?"minute":"minutes";
 			throw new LoginAttemptsExeededException("Too many login attempts, you need to wait for least "+minutes+" "+s+" before you can try again.");
 		}
@@ -64,7 +88,7 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 		userDetails.setActivationGracePeriod(tokenUtil.getAccountActivationExpire());
 		if(!userDetails.isAccountNonExpired()) throw new AccountSuspendedAuthenticationException("Unable to login. You need to activate your account first.");
 
-		log.info("Authenticating, username: {}, password: {}", username, password);
+		log.info("Authenticating, username: {}", username);
 		UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(username, password);
 		return authenticationManager.authenticate(authenticationToken);
 
@@ -72,12 +96,13 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 
 	@Override
 	protected void successfulAuthentication(HttpServletRequest request, HttpServletResponse response, FilterChain chain, Authentication authResult) throws IOException, ServletException {
-		org.springframework.security.core.userdetails.User user = (org.springframework.security.core.userdetails.User) authResult.getPrincipal();
+		Timer.Sample sample = Timer.start(meterRegistry);
+		UserDetails user = (UserDetails) authResult.getPrincipal();
 		String accessToken = tokenUtil.generateToken( user, false );
 		String refreshToken = tokenUtil.generateToken(user, true);
 		String username = user.getUsername();
 		if(username !=null){
-			userDetailsService.resetLoginAttempts(username);
+			userDetailsService.resetLoginAttempts(username, request.getRemoteAddr());
 			refreshTokenService.saveRefreshToken(username, refreshToken);
 		}
 		response.setHeader("access_token", accessToken);
@@ -87,10 +112,18 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 		tokens.put("refreshToken", refreshToken);
 		response.setContentType(APPLICATION_JSON_VALUE);
 		new ObjectMapper().writeValue(response.getOutputStream(), tokens);
+		sample.stop(tokenIssueTimer);
 	}
 
 	@Override
 	protected void unsuccessfulAuthentication(HttpServletRequest request, HttpServletResponse response, AuthenticationException failed) throws IOException, ServletException {
+		meterRegistry.counter("auth.login.failures", "reason", failed.getClass().getSimpleName()).increment();
+		if(failed instanceof PasswordHashingRejectedException){
+			// the password was never checked, so this must not count as a failed attempt
+			SecurityContextHolder.clearContext();
+			ResponseBuilder.sendTooManyRequests(response, failed.getMessage(), ((PasswordHashingRejectedException) failed).getRetryAfterSeconds());
+			return;
+		}
 		String username = request.getParameter("email");
 		if(username !=null){
 			userDetailsService.incrementLoginAttempt(username, request.getRemoteAddr());
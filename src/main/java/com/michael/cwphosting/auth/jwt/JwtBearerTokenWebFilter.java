@@ -0,0 +1,128 @@
+package com.michael.cwphosting.auth.jwt;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
+import com.michael.cwphosting.auth.security.TokenRevocationRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * WebFlux counterpart of {@link JwtTokenAuthorizationOncePerRequestFilter}: authenticates the bearer access token
+ * of every request outside the public paths and rejects the request with the same 403 body when it can't.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class JwtBearerTokenWebFilter implements WebFilter {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final TokenUtil tokenUtil;
+	private final ReactiveUserDetailsService userDetailsService;
+	private final VerifiedTokenCache verifiedTokenCache;
+	private final SecurityVersionRegistry securityVersionRegistry;
+	private final TokenRevocationRegistry tokenRevocationRegistry;
+	private final MeterRegistry meterRegistry;
+	private final String authenticationPath;
+	private final boolean stateless;
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		String path = exchange.getRequest().getPath().pathWithinApplication().value();
+		if (path.equals(authenticationPath)
+				|| path.startsWith("/token/")
+				|| path.equals("/user")
+				|| path.startsWith("/user/")
+				|| path.startsWith("/actuator/health")) {
+			return chain.filter(exchange);
+		}
+
+		Timer.Sample sample = Timer.start(meterRegistry);
+		String header = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+		if (header == null || !header.startsWith("Bearer ")) {
+			stop(sample, "missing");
+			return reject(exchange.getResponse(), "A valid access token is required");
+		}
+
+		DecodedJWT decodedToken;
+		try {
+			decodedToken = verifiedTokenCache.getVerifiedToken(header.substring(7));
+		}
+		catch (Exception e) {
+			stop(sample, "invalid");
+			return reject(exchange.getResponse(), e.getMessage());
+		}
+		if (tokenRevocationRegistry.isRevoked(decodedToken)) {
+			stop(sample, "revoked");
+			return reject(exchange.getResponse(), "This access token has been revoked");
+		}
+
+		Mono<Collection<? extends GrantedAuthority>> authorities = stateless ? authoritiesFromClaims(decodedToken) : authoritiesFromUser(decodedToken);
+		// the rejection has to be decided before the chain runs: the chain itself completes empty
+		return authorities
+				.map(granted -> Optional.of(new UsernamePasswordAuthenticationToken(decodedToken.getSubject(), null, granted)))
+				.defaultIfEmpty(Optional.empty())
+				.flatMap(authentication -> {
+					if (authentication.isEmpty()) {
+						stop(sample, "invalid");
+						return reject(exchange.getResponse(), "Unable to verify token. Please request a new token");
+					}
+					stop(sample, "valid");
+					return chain.filter(exchange).contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication.get()));
+				});
+	}
+
+	private Mono<Collection<? extends GrantedAuthority>> authoritiesFromUser(DecodedJWT decodedToken) {
+		return userDetailsService.findByUsername(decodedToken.getSubject())
+				.filter(userDetails -> tokenUtil.validateToken(decodedToken, userDetails))
+				.<Collection<? extends GrantedAuthority>>map(userDetails -> userDetails.getAuthorities())
+				.onErrorResume(e -> Mono.empty());
+	}
+
+	private Mono<Collection<? extends GrantedAuthority>> authoritiesFromClaims(DecodedJWT decodedToken) {
+		if (!tokenUtil.validateToken(decodedToken)) return Mono.empty();
+		Long securityVersion = decodedToken.getClaim(TokenUtil.CLAIM_KEY_SECURITY_VERSION).asLong();
+		if (!securityVersionRegistry.isCurrent(decodedToken.getSubject(), securityVersion)) return Mono.empty();
+		return Mono.just(tokenUtil.getAuthorities(decodedToken));
+	}
+
+	private Mono<Void> reject(ServerHttpResponse response, String message) {
+		log.error(message);
+		response.setStatusCode(HttpStatus.FORBIDDEN);
+		response.getHeaders().set("message", message);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		try {
+			DataBuffer body = response.bufferFactory().wrap(MAPPER.writeValueAsBytes(Map.of("message", message)));
+			return response.writeWith(Mono.just(body));
+		}
+		catch (Exception e) {
+			return response.setComplete();
+		}
+	}
+
+	private void stop(Timer.Sample sample, String outcome) {
+		sample.stop(Timer.builder("auth.token.verification")
+				.tag("outcome", outcome)
+				.tag("mode", stateless ? "stateless" : "user-lookup")
+				.register(meterRegistry));
+	}
+}
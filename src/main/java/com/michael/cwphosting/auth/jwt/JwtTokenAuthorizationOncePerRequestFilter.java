@@ -1,10 +1,15 @@
 package com.michael.cwphosting.auth.jwt;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
+import com.michael.cwphosting.auth.security.TokenRevocationRegistry;
 import com.michael.cwphosting.auth.utilities.ResponseBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -16,6 +21,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Collection;
 
 import static java.util.Arrays.stream;
 
@@ -25,6 +31,11 @@ public class JwtTokenAuthorizationOncePerRequestFilter extends OncePerRequestFil
 
 	private final TokenUtil tokenUtil;
 	private final UserDetailsService userDetailsService;
+	private final VerifiedTokenCache verifiedTokenCache;
+	private final SecurityVersionRegistry securityVersionRegistry;
+	private final TokenRevocationRegistry tokenRevocationRegistry;
+	private final MeterRegistry meterRegistry;
+	private final boolean stateless;
 
 	//@Value("${jwt.http.request.header}")
 	private final String tokenHeader = "Authorization";
@@ -35,35 +46,77 @@ public class JwtTokenAuthorizationOncePerRequestFilter extends OncePerRequestFil
 
 		if(request.getServletPath().equals("/login")
 				|| request.getServletPath().startsWith("/token/")
+				|| request.getServletPath().equals("/user")
 				|| request.getServletPath().startsWith("/user/")
+				|| request.getServletPath().startsWith("/actuator/health")
 		){
 			filterChain.doFilter(request, response);
 		}
 		else {
+			Timer.Sample sample = Timer.start(meterRegistry);
+			String outcome = "invalid";
 			try {
 				final String requestTokenHeader = request.getHeader(this.tokenHeader);
 				log.info("Token Header = {}", requestTokenHeader);
-				if (requestTokenHeader == null || !requestTokenHeader.startsWith("Bearer ")) {
-					throw new Exception("A valid access token is required");
-				}
-				String jwtToken = requestTokenHeader.substring(7);
-				DecodedJWT decodedToken = tokenUtil.getDecodedToken(jwtToken);
-				String username = decodedToken.getSubject();
-				UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
-				if (tokenUtil.validateToken(decodedToken, userDetails)) {
-					UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(username, null, userDetails.getAuthorities());
-					usernamePasswordAuthenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-					SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
-					filterChain.doFilter(request,response);
-				}
-				else{
-					throw new Exception("Unable to verify token. Please request a new token");
-				}
+				UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = authenticate(requestTokenHeader);
+				outcome = "valid";
+				stopVerification(sample, outcome);
+				usernamePasswordAuthenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+				SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
+				filterChain.doFilter(request,response);
 			}
 			catch (Exception e){
+				if (e instanceof RejectedTokenException) outcome = ((RejectedTokenException) e).outcome;
+				if (!"valid".equals(outcome)) stopVerification(sample, outcome);
 				log.error(e.getMessage());
 				ResponseBuilder.sendMessageResponse(response, e);
 			}
 		}
 	}
+
+	/**
+	 * Checks the Authorization header of a protected request: the token is verified through the cache, must not be
+	 * revoked, and its authorities come from the user or, in stateless mode, from the token itself.
+	 */
+	public UsernamePasswordAuthenticationToken authenticate(String requestTokenHeader) throws Exception {
+		if (requestTokenHeader == null || !requestTokenHeader.startsWith("Bearer ")) {
+			throw new RejectedTokenException("missing", "A valid access token is required");
+		}
+		String jwtToken = requestTokenHeader.substring(7);
+		DecodedJWT decodedToken = verifiedTokenCache.getVerifiedToken(jwtToken);
+		if (tokenRevocationRegistry.isRevoked(decodedToken)) {
+			throw new RejectedTokenException("revoked", "This access token has been revoked");
+		}
+		Collection<? extends GrantedAuthority> authorities = stateless ? authoritiesFromClaims(decodedToken) : authoritiesFromUser(decodedToken);
+		if (authorities == null) throw new Exception("Unable to verify token. Please request a new token");
+		return new UsernamePasswordAuthenticationToken(decodedToken.getSubject(), null, authorities);
+	}
+
+	private void stopVerification(Timer.Sample sample, String outcome) {
+		sample.stop(Timer.builder("auth.token.verification")
+				.tag("outcome", outcome)
+				.tag("mode", stateless ? "stateless" : "user-lookup")
+				.register(meterRegistry));
+	}
+
+	private Collection<? extends GrantedAuthority> authoritiesFromUser(DecodedJWT decodedToken) {
+		UserDetails userDetails = this.userDetailsService.loadUserByUsername(decodedToken.getSubject());
+		return tokenUtil.validateToken(decodedToken, userDetails) ? userDetails.getAuthorities() : null;
+	}
+
+	private Collection<? extends GrantedAuthority> authoritiesFromClaims(DecodedJWT decodedToken) {
+		if (!tokenUtil.validateToken(decodedToken)) return null;
+		Long securityVersion = decodedToken.getClaim(TokenUtil.CLAIM_KEY_SECURITY_VERSION).asLong();
+		if (!securityVersionRegistry.isCurrent(decodedToken.getSubject(), securityVersion)) return null;
+		return tokenUtil.getAuthorities(decodedToken);
+	}
+
+	private static class RejectedTokenException extends Exception {
+		private final String outcome;
+
+		RejectedTokenException(String outcome, String message) {
+			super(message);
+			this.outcome = outcome;
+		}
+	}
 }
@@ -22,17 +22,27 @@ public class JwtUserDetails implements UserDetails {
 	private final String password;
 	private final boolean suspended;
 	private Long activationGracePeriod = 60*60*24*7l;
-	private final List<SimpleGrantedAuthority> authorities = new ArrayList<SimpleGrantedAuthority>();
+	private final Collection<? extends GrantedAuthority> authorities;
 
 	public JwtUserDetails(User user) {
+		this(user, authoritiesOf(user));
+	}
+
+	public JwtUserDetails(User user, Collection<? extends GrantedAuthority> authorities) {
 		this.user = user;
 		this.id = user.getId();
 		this.username = user.getEmail();
 		this.password = user.getPassword();
 		this.suspended = user.isSuspended();
+		this.authorities = authorities;
+	}
+
+	private static List<SimpleGrantedAuthority> authoritiesOf(User user) {
+		List<SimpleGrantedAuthority> authorities = new ArrayList<SimpleGrantedAuthority>();
 		for(Role role : user.getRoles()){
-			this.authorities.add(new SimpleGrantedAuthority(role.getName()));
+			authorities.add(new SimpleGrantedAuthority(role.getName()));
 		}
+		return authorities;
 	}
 
 	@JsonIgnore
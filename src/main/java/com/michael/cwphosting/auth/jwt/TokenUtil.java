@@ -5,28 +5,42 @@ import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.michael.cwphosting.auth.security.PermissionRegistry;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Clock;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.impl.DefaultClock;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @Component
 public class TokenUtil implements Serializable {
 	static final String CLAIM_KEY_USERNAME = "sub";
 	static final String CLAIM_KEY_CREATED = "iat";
 	static final String CLAIM_KEY_ROLES = "roles";
+	static final String CLAIM_KEY_PERMISSIONS = "perms";
+	static final String CLAIM_KEY_SECURITY_VERSION = "sv";
+	static final String CLAIM_KEY_ISSUED_AT_MILLIS = "iat_ms";
 	private static final long serialVersionUID = -3301605591108950415L;
 	private Clock clock = DefaultClock.INSTANCE;
+	private transient Algorithm algorithm;
+	private transient JWTVerifier verifier;
+	private transient SecurityVersionRegistry securityVersionRegistry;
+	private transient PermissionRegistry permissionRegistry;
 
 	@Value("${jwt.signing.key.secret}")
 	private String secret;
@@ -40,6 +54,26 @@ public class TokenUtil implements Serializable {
 	@Value("${jwt.account.activation.expire}")
 	private Long accountActivationExpire;
 
+	@Autowired
+	public void setSecurityVersionRegistry(SecurityVersionRegistry securityVersionRegistry) {
+		this.securityVersionRegistry = securityVersionRegistry;
+	}
+
+	@Autowired
+	public void setPermissionRegistry(PermissionRegistry permissionRegistry) {
+		this.permissionRegistry = permissionRegistry;
+	}
+
+	@PostConstruct
+	void init() {
+		algorithm = Algorithm.HMAC256(secret.getBytes());
+		verifier = JWT.require(algorithm).build();
+	}
+
+	public Long getTokenExpiration() {
+		return tokenExpiration;
+	}
+
 	public Long getAccountActivationExpire() {
 		return accountActivationExpire;
 	}
@@ -62,8 +96,6 @@ public class TokenUtil implements Serializable {
 	}
 
 	public Claim getClaim(String token, String claim) {
-		Algorithm algorithm = getAlgorithm();
-		JWTVerifier verifier = JWT.require(algorithm).build();
 		DecodedJWT decodedJWT = verifier.verify(token);
 		return decodedJWT.getClaim(claim);
 	}
@@ -87,14 +119,11 @@ public class TokenUtil implements Serializable {
 	}
 
 	public DecodedJWT getDecodedToken(String token){
-		Algorithm algorithm = getAlgorithm();
-		JWTVerifier verifier = JWT.require(algorithm).build();
 		return verifier.verify(token);
 	}
 
 	public String generateToken(UserDetails user, boolean refreshToken) {
 		final Date createdDate = clock.now();
-		Algorithm algorithm = getAlgorithm();
 		if(refreshToken){
 			final Date expirationDate = calculateExpirationDate(createdDate,refreshTokenExpiration);
 			return JWT.create()
@@ -105,9 +134,13 @@ public class TokenUtil implements Serializable {
 		else{
 			final Date expirationDate = calculateExpirationDate(createdDate, tokenExpiration);
 			return JWT.create()
+					.withJWTId(UUID.randomUUID().toString())
 					.withSubject(user.getUsername())
+					.withIssuedAt(createdDate)
 					.withExpiresAt(expirationDate)
-					.withClaim("roles", user.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList()))
+					.withClaim(CLAIM_KEY_PERMISSIONS, permissionRegistry.mask(user.getAuthorities()))
+					.withClaim(CLAIM_KEY_SECURITY_VERSION, securityVersionRegistry.currentVersion(user.getUsername()))
+					.withClaim(CLAIM_KEY_ISSUED_AT_MILLIS, createdDate.getTime())
 					.sign(algorithm);
 		}
 	}
@@ -127,17 +160,52 @@ public class TokenUtil implements Serializable {
 		return Jwts.builder().setClaims(claims).signWith(SignatureAlgorithm.HS512, secret).compact();
 	}
 
+	/**
+	 * Returns the shared authority list encoded in an access token's {@code perms} mask, falling back to the
+	 * {@code roles} array carried by tokens issued before masks were introduced.
+	 */
+	public Collection<? extends GrantedAuthority> getAuthorities(DecodedJWT token) {
+		Long permissions = token.getClaim(CLAIM_KEY_PERMISSIONS).asLong();
+		if (permissions != null) return permissionRegistry.authorities(permissions);
+		List<String> roles = token.getClaim(CLAIM_KEY_ROLES).asList(String.class);
+		if (roles == null) return Collections.emptyList();
+		return permissionRegistry.authorities(permissionRegistry.maskOfNames(roles));
+	}
+
+	/**
+	 * Whether an access token grants {@code authority}, read straight from the {@code perms} mask when the token has one.
+	 */
+	public boolean hasAuthority(DecodedJWT token, String authority) {
+		Long permissions = token.getClaim(CLAIM_KEY_PERMISSIONS).asLong();
+		if (permissions != null) return permissionRegistry.has(permissions, authority);
+		return getAuthorities(token).stream().anyMatch(granted -> authority.equals(granted.getAuthority()));
+	}
+
+	/**
+	 * Returns when an access token was issued to the millisecond, as {@code iat} only holds seconds. Tokens issued
+	 * before the {@code iat_ms} claim was added fall back to {@code iat}; null when neither is present.
+	 */
+	public Long getIssuedAtMillis(DecodedJWT token) {
+		Long issuedAt = token.getClaim(CLAIM_KEY_ISSUED_AT_MILLIS).asLong();
+		if (issuedAt != null) return issuedAt;
+		return token.getIssuedAt() == null ? null : token.getIssuedAt().getTime();
+	}
+
 	public Boolean validateToken(DecodedJWT token, UserDetails user) {
 		final String username = token.getSubject();
 		return (username.equals(user.getUsername()) && !isTokenExpired(token));
 	}
 
+	public Boolean validateToken(DecodedJWT token) {
+		return token.getSubject() != null && !isTokenExpired(token);
+	}
+
 	private Date calculateExpirationDate(Date createdDate, Long expirationTime) {
 		return new Date(createdDate.getTime() + expirationTime * 1000);
 	}
 
 	public Algorithm getAlgorithm(){
-		return Algorithm.HMAC256(secret.getBytes());
+		return algorithm;
 	}
 
 //	public
@@ -0,0 +1,78 @@
+package com.michael.cwphosting.auth.jwt;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.michael.cwphosting.auth.utilities.Sha256Digest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps access tokens whose signature has already been verified, keyed by the SHA-256 digest of the token,
+ * so repeated requests with the same token skip the HMAC check. Entries live until the token's own expiry.
+ */
+@Component
+public class VerifiedTokenCache {
+
+	private final TokenUtil tokenUtil;
+	private final Cache<String, DecodedJWT> cache;
+
+	public VerifiedTokenCache(TokenUtil tokenUtil, MeterRegistry meterRegistry,
+							  @Value("${jwt.token.cache.max-size:10000}") long maxSize) {
+		this.tokenUtil = tokenUtil;
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfter(new TokenExpiry(tokenUtil.getTokenExpiration()))
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt.verified.tokens");
+	}
+
+	public DecodedJWT getVerifiedToken(String token) {
+		return cache.get(Sha256Digest.digest(token), key -> tokenUtil.getDecodedToken(token));
+	}
+
+	public void invalidate(String token) {
+		cache.invalidate(Sha256Digest.digest(token));
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	public long size() {
+		return cache.estimatedSize();
+	}
+
+	private static class TokenExpiry implements Expiry<String, DecodedJWT> {
+		private final long defaultTtlNanos;
+
+		TokenExpiry(Long tokenExpiration) {
+			this.defaultTtlNanos = TimeUnit.SECONDS.toNanos(tokenExpiration);
+		}
+
+		@Override
+		public long expireAfterCreate(String key, DecodedJWT token, long currentTime) {
+			Date expiresAt = token.getExpiresAt();
+			if (expiresAt == null) return defaultTtlNanos;
+			return Math.max(0, TimeUnit.MILLISECONDS.toNanos(expiresAt.getTime() - System.currentTimeMillis()));
+		}
+
+		@Override
+		public long expireAfterUpdate(String key, DecodedJWT token, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+
+		@Override
+		public long expireAfterRead(String key, DecodedJWT token, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.michael.cwphosting.auth.jwt.resource;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserImportReport implements Serializable {
+
+	private static final long serialVersionUID = -2319508873437270917L;
+
+	public enum Status { CREATED, DUPLICATE, INVALID, FAILED }
+
+	private final List<Row> rows = new ArrayList<>();
+	private final int[] counts = new int[Status.values().length];
+
+	public void add(Row row) {
+		rows.add(row);
+		counts[row.getStatus().ordinal()]++;
+	}
+
+	public int getCreated() {
+		return counts[Status.CREATED.ordinal()];
+	}
+
+	public int getDuplicates() {
+		return counts[Status.DUPLICATE.ordinal()];
+	}
+
+	public int getInvalid() {
+		return counts[Status.INVALID.ordinal()];
+	}
+
+	public int getFailed() {
+		return counts[Status.FAILED.ordinal()];
+	}
+
+	public List<Row> getRows() {
+		return rows;
+	}
+
+	public static class Row implements Serializable {
+
+		private static final long serialVersionUID = 8265027355062309424L;
+
+		private final int row;
+		private final String email;
+		private Status status;
+		private String message;
+
+		public Row(int row, String email) {
+			this.row = row;
+			this.email = email;
+		}
+
+		public void setResult(Status status, String message) {
+			this.status = status;
+			this.message = message;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		public String getEmail() {
+			return email;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.michael.cwphosting.auth.jwt.resource;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * One account in a bulk import, as a CSV record (columns named after the fields) or an NDJSON line.
+ */
+@Data
+@NoArgsConstructor
+public class UserImportRow implements Serializable {
+
+	private static final long serialVersionUID = 4022693017582733562L;
+
+	private String firstName;
+	private String lastName;
+	private String email;
+	private String phoneNumber;
+	private String password;
+	private String country;
+	private String city;
+	private String addressLine1;
+	private String addressLine2;
+	private String postCode;
+}
@@ -0,0 +1,24 @@
+package com.michael.cwphosting.auth.jwt.resource;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@NoArgsConstructor
+@Getter @Setter
+public class UserListRequest {
+	private String cursor;
+	private Integer limit;
+	private String sort;
+	private String role;
+	private Boolean suspended;
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private LocalDateTime createdFrom;
+	@DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+	private LocalDateTime createdTo;
+	private List<String> fields;
+}
@@ -0,0 +1,27 @@
+package com.michael.cwphosting.auth.jwt.resource;
+
+import com.michael.cwphosting.auth.models.UserSummary;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class UserPageResponse implements Serializable {
+
+	private static final long serialVersionUID = -1705624416478651132L;
+
+	private final List<UserSummary> items;
+	private final String nextCursor;
+
+	public UserPageResponse(List<UserSummary> items, String nextCursor) {
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<UserSummary> getItems() {
+		return items;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
@@ -14,4 +14,8 @@ public class Address {
 	private String addressLine2;
 	@Nullable
 	private String postCode;
+
+	public Address copy(){
+		return new Address(country, city, addressLine1, addressLine2, postCode);
+	}
 }
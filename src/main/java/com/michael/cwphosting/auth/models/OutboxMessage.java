@@ -0,0 +1,43 @@
+package com.michael.cwphosting.auth.models;
+
+import com.mongodb.lang.Nullable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+@Document(collection = "email_outbox")
+@CompoundIndex(name = "status_next_attempt", def = "{'status': 1, 'nextAttemptAt': 1}")
+public class OutboxMessage {
+
+	public enum Status { PENDING, SENDING, SENT, DEAD }
+
+	@Id
+	private final String id;
+	private final String to;
+	private final String from;
+	private final String subject;
+	private final String htmlBody;
+	private final String textBody;
+	private final LocalDateTime created;
+	private final Status status;
+	private final int attempts;
+	private final LocalDateTime nextAttemptAt;
+	@Nullable
+	private final LocalDateTime lockedUntil;
+	@Nullable @Indexed(expireAfterSeconds = 604800)
+	private final LocalDateTime sentAt;
+	@Nullable
+	private final String lastError;
+
+	public static OutboxMessage pending(String to, String from, String subject, String htmlBody, String textBody) {
+		LocalDateTime now = LocalDateTime.now();
+		return new OutboxMessage(null, to, from, subject, htmlBody, textBody, now, Status.PENDING, 0, now, null, null, null);
+	}
+}
@@ -0,0 +1,23 @@
+package com.michael.cwphosting.auth.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The bit a role or permission occupies in the {@code perms} claim of access tokens. Assignments are never changed or
+ * reused once made, so a mask stays meaningful for the lifetime of every token that carries it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "permission_bits")
+public class PermissionBit {
+	@Id
+	private String name;
+	@Indexed(unique = true)
+	private int bit;
+}
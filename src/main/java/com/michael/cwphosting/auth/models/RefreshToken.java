@@ -1,31 +1,38 @@
 package com.michael.cwphosting.auth.models;
 
+import com.michael.cwphosting.auth.utilities.Sha256Digest;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
 
+/**
+ * A refresh token that has been handed out. Only the SHA-256 digest of the token is stored, as the id, and Mongo
+ * removes the document on its own once {@code expires} has passed.
+ */
 @Data
 @Document(collection = "refresh_tokens")
+@CompoundIndex(name = "username_expires", def = "{'username': 1, 'expires': 1}")
 @AllArgsConstructor
 @NoArgsConstructor
 public class RefreshToken {
 	@Id
 	String id;
 	String username;
-	@Indexed(unique = true)
-	String token;
 	Date created;
+	@Indexed(expireAfterSeconds = 0)
 	Date expires;
 
-	public RefreshToken(String username, String token, Date created, Date expires) {
-		this.username = username;
-		this.token = token;
-		this.created = created;
-		this.expires = expires;
+	public static RefreshToken forToken(String username, String token, Date created, Date expires) {
+		return new RefreshToken(digest(token), username, created, expires);
+	}
+
+	public static String digest(String token) {
+		return Sha256Digest.digest(token);
 	}
 }
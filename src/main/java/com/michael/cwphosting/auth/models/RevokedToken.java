@@ -0,0 +1,38 @@
+package com.michael.cwphosting.auth.models;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * One entry of the access token revocation feed, kept in a capped collection that every node tails. An entry either
+ * revokes a single token by {@code jti}, or, when {@code jti} is null, every token of {@code username} issued up to
+ * {@code revokedAt}. Entries only matter until {@code expires}, when the newest affected token has expired anyway.
+ */
+@Data
+@NoArgsConstructor
+@Document(collection = "revoked_tokens")
+public class RevokedToken {
+	@Id
+	String id;
+	String jti;
+	String username;
+	Date revokedAt;
+	Date expires;
+
+	public static RevokedToken token(String jti, String username, Date expires) {
+		RevokedToken revoked = new RevokedToken();
+		revoked.jti = jti;
+		revoked.username = username;
+		revoked.revokedAt = new Date();
+		revoked.expires = expires;
+		return revoked;
+	}
+
+	public static RevokedToken allTokens(String username, Date expires) {
+		return token(null, username, expires);
+	}
+}
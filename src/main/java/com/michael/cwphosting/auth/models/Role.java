@@ -18,4 +18,8 @@ public class Role {
 	public Role(String roleName) {
 		this.name = roleName;
 	}
+
+	public Role copy() {
+		return new Role(id, name);
+	}
 }
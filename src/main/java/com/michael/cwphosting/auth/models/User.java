@@ -2,21 +2,39 @@ package com.michael.cwphosting.auth.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.michael.cwphosting.auth.utilities.Md5Digest;
+import com.michael.cwphosting.auth.utilities.Sha256Digest;
 import com.mongodb.lang.Nullable;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.Collectors;
 
+/**
+ * A user account. The activation and password reset tokens are stored as their SHA-256 digest, like refresh tokens,
+ * behind sparse unique indexes. An account signed up but never activated carries {@code activationExpires}, and the
+ * TTL index on it removes the account once the activation period is over; activating clears it.
+ */
 @Data
 @Document(collection = "users")
+@CompoundIndexes({
+		@CompoundIndex(name = "created_id", def = "{'created': 1, '_id': 1}"),
+		@CompoundIndex(name = "suspended_id", def = "{'suspended': 1, '_id': 1}"),
+		@CompoundIndex(name = "role_id", def = "{'roles.name': 1, '_id': 1}"),
+		@CompoundIndex(name = "suspended_created_id", def = "{'suspended': 1, 'created': 1, '_id': 1}"),
+		@CompoundIndex(name = "role_created_id", def = "{'roles.name': 1, 'created': 1, '_id': 1}")
+})
 @Slf4j
 @NoArgsConstructor
 @AllArgsConstructor
@@ -33,15 +51,20 @@ public class User {
 	private LocalDateTime created;
 	@Nullable
 	private LocalDateTime lastLogin;
+	@Nullable @JsonIgnore
+	private String lastLoginIpAddress;
 	private boolean suspended;
 
-	@Nullable @JsonIgnore
+	@Nullable @JsonIgnore @Indexed(unique = true, sparse = true)
 	private String activationToken;
 
-	@Nullable @JsonIgnore
+	@Nullable @JsonIgnore @Indexed(expireAfterSeconds = 0, sparse = true)
+	private LocalDateTime activationExpires;
+
+	@Nullable @JsonIgnore @Indexed(unique = true, sparse = true)
 	private String forgottenPasswordToken;
 
-	@Nullable @JsonIgnore
+	@Nullable @JsonIgnore @Indexed(sparse = true)
 	private LocalDateTime forgottenPasswordTokenExpire;
 
 	private String password;
@@ -51,6 +74,11 @@ public class User {
 	@Nullable
 	private String failedLoginIpAddress;
 	private Collection<Role> roles = new ArrayList<>();
+	private long securityVersion;
+	@Nullable @JsonIgnore @Indexed(sparse = true)
+	private LocalDateTime securityVersionChanged;
+	@Version @Nullable @JsonIgnore
+	private Long version;
 
 	public User(String firstName, String lastName, String email, String phoneNumber, String password, Address address) {
 		this.firstName = firstName;
@@ -71,7 +99,23 @@ public class User {
 		return false;
 	}
 
+	public static String digest(String token) {
+		return Sha256Digest.digest(token);
+	}
+
 	public String getUsername(){
 		return email;
 	}
+
+	/**
+	 * A copy that shares no mutable state with this user, so changes to the copy's address or roles leave this one
+	 * as it was read.
+	 */
+	public User copy(){
+		User copy = new User();
+		BeanUtils.copyProperties(this, copy);
+		copy.setAddress(address == null ? null : address.copy());
+		copy.setRoles(roles.stream().map(Role::copy).collect(Collectors.toCollection(ArrayList::new)));
+		return copy;
+	}
 }
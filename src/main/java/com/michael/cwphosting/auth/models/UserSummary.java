@@ -0,0 +1,30 @@
+package com.michael.cwphosting.auth.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Read-only projection of a {@link User} for listings. Fields that were not selected are left null and omitted
+ * from the JSON output.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserSummary {
+	@Id
+	private String id;
+	private String firstName;
+	private String lastName;
+	private String email;
+	private String phoneNumber;
+	private Address address;
+	private LocalDateTime created;
+	private LocalDateTime lastLogin;
+	private Boolean suspended;
+	private Collection<Role> roles;
+}
@@ -0,0 +1,36 @@
+package com.michael.cwphosting.auth.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Backs every repository and {@code MongoTemplate} with an in-process, in-memory Mongo server for load tests and
+ * local runs. Nothing is persisted and no external database is needed.
+ */
+@Configuration
+@Profile("inmemory")
+@Slf4j
+public class InMemoryMongoConfiguration {
+
+	@Bean(destroyMethod = "shutdownNow")
+	MongoServer inMemoryMongoServer() {
+		MongoServer server = new MongoServer(new MemoryBackend());
+		InetSocketAddress address = server.bind();
+		log.info("Using in-memory Mongo on {}", address);
+		return server;
+	}
+
+	@Bean(destroyMethod = "close")
+	MongoClient mongoClient(MongoServer inMemoryMongoServer) {
+		InetSocketAddress address = inMemoryMongoServer.getLocalAddress();
+		return MongoClients.create("mongodb://" + address.getHostString() + ":" + address.getPort());
+	}
+}
@@ -0,0 +1,8 @@
+package com.michael.cwphosting.auth.repository;
+
+import com.michael.cwphosting.auth.models.OutboxMessage;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface OutboxMessageRepository extends MongoRepository<OutboxMessage, String> {
+	long countByStatus(OutboxMessage.Status status);
+}
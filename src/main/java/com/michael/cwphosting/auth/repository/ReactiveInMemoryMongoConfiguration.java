@@ -0,0 +1,25 @@
+package com.michael.cwphosting.auth.repository;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Points the reactive repositories at the server started by {@link InMemoryMongoConfiguration} when the
+ * {@code inmemory} and {@code reactive} profiles are combined.
+ */
+@Configuration
+@Profile("inmemory & reactive")
+public class ReactiveInMemoryMongoConfiguration {
+
+	@Bean(destroyMethod = "close")
+	MongoClient reactiveMongoClient(MongoServer inMemoryMongoServer) {
+		InetSocketAddress address = inMemoryMongoServer.getLocalAddress();
+		return MongoClients.create("mongodb://" + address.getHostString() + ":" + address.getPort());
+	}
+}
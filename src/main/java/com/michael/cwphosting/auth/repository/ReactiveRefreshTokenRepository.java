@@ -0,0 +1,10 @@
+package com.michael.cwphosting.auth.repository;
+
+import com.michael.cwphosting.auth.models.RefreshToken;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveRefreshTokenRepository extends ReactiveMongoRepository<RefreshToken, String> {
+	Mono<Long> deleteRefreshTokenById(String id);
+	Mono<Long> deleteRefreshTokensByUsername(String username);
+}
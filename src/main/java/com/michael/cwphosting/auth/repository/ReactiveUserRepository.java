@@ -0,0 +1,9 @@
+package com.michael.cwphosting.auth.repository;
+
+import com.michael.cwphosting.auth.models.User;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveUserRepository extends ReactiveMongoRepository<User, String> {
+	Mono<User> findUserByEmail(String email);
+}
@@ -0,0 +1,146 @@
+package com.michael.cwphosting.auth.security;
+
+import com.michael.cwphosting.auth.exceptions.PasswordHashingRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the (deliberately slow) delegate encoder on a fixed-size pool with a bounded queue, so a burst of logins
+ * can only ever occupy {@code poolSize} cores. When the queue is full the call fails immediately with a
+ * {@link PasswordHashingRejectedException} instead of piling up behind the request threads.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+	private final PasswordEncoder delegate;
+	private final ThreadPoolExecutor executor;
+	private final long timeoutMillis;
+	private final Timer encodeTimer;
+	private final Timer matchesTimer;
+	private final Timer waitTimer;
+	private final Counter rejected;
+
+	public BoundedPasswordEncoder(PasswordEncoder delegate, int poolSize, int queueCapacity, long timeoutMillis, MeterRegistry meterRegistry) {
+		this.delegate = delegate;
+		this.timeoutMillis = timeoutMillis;
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hash-"),
+				new ThreadPoolExecutor.AbortPolicy());
+		this.encodeTimer = hashTimer(meterRegistry, "encode");
+		this.matchesTimer = hashTimer(meterRegistry, "matches");
+		this.waitTimer = Timer.builder("password.hashing.wait").publishPercentileHistogram().register(meterRegistry);
+		this.rejected = Counter.builder("password.hashing.rejected").register(meterRegistry);
+		Gauge.builder("password.hashing.queue.depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+		Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return submit(encodeTimer, () -> delegate.encode(rawPassword));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		return submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+	}
+
+	/**
+	 * Non-blocking variant of {@link #matches} for callers that must not wait on the hashing pool.
+	 */
+	public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword) {
+		long queuedAt = System.nanoTime();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+				return matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword));
+			}, executor);
+		}
+		catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw new PasswordHashingRejectedException("Server is busy, please try again later.", getRetryAfterSeconds());
+		}
+	}
+
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		return delegate.upgradeEncoding(encodedPassword);
+	}
+
+	/**
+	 * The wrapped encoder, for callers that already run on their own bounded pool.
+	 */
+	public PasswordEncoder getDelegate() {
+		return delegate;
+	}
+
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * How long a rejected caller should wait: the time the pool needs to work through a full queue at the
+	 * currently observed hash latency.
+	 */
+	public long getRetryAfterSeconds() {
+		double meanMillis = Math.max(matchesTimer.mean(TimeUnit.MILLISECONDS), encodeTimer.mean(TimeUnit.MILLISECONDS));
+		int queued = executor.getQueue().size() + executor.getActiveCount();
+		long seconds = (long) Math.ceil(queued * meanMillis / executor.getMaximumPoolSize() / 1000);
+		return Math.max(1, seconds);
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private <T> T submit(Timer timer, Callable<T> hash) {
+		long queuedAt = System.nanoTime();
+		Future<T> future;
+		try {
+			future = executor.submit(() -> {
+				waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+				return timer.recordCallable(hash);
+			});
+		}
+		catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw new PasswordHashingRejectedException("Server is busy, please try again later.", getRetryAfterSeconds());
+		}
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			future.cancel(false);
+			rejected.increment();
+			throw new PasswordHashingRejectedException("Server is busy, please try again later.", getRetryAfterSeconds());
+		}
+		catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while hashing password", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static Timer hashTimer(MeterRegistry meterRegistry, String operation) {
+		return Timer.builder("password.hashing.duration")
+				.tag("operation", operation)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+	}
+}
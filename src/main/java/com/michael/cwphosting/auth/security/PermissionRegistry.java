@@ -0,0 +1,180 @@
+package com.michael.cwphosting.auth.security;
+
+import com.michael.cwphosting.auth.models.PermissionBit;
+import com.michael.cwphosting.auth.models.Role;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Assigns every role a fixed bit so a user's roles travel in access tokens as one number, and hands out a single shared,
+ * immutable authority list per distinct set of roles instead of building a new one for every token and every request.
+ * Bits are claimed in the {@code permission_bits} collection, whose unique index on the bit lets several nodes allocate
+ * at the same time without handing the same bit to two roles.
+ */
+@Component
+@Slf4j
+public class PermissionRegistry {
+
+	public static final int MAX_PERMISSIONS = Long.SIZE;
+
+	private final MongoTemplate mongoTemplate;
+	private final ConcurrentHashMap<String, Integer> bits = new ConcurrentHashMap<>();
+	private final AtomicReferenceArray<GrantedAuthority> authorities = new AtomicReferenceArray<>(MAX_PERMISSIONS);
+	private final ConcurrentHashMap<Long, List<GrantedAuthority>> authoritySets = new ConcurrentHashMap<>();
+	private final ReentrantLock allocationLock = new ReentrantLock();
+
+	public PermissionRegistry(MongoTemplate mongoTemplate) {
+		this.mongoTemplate = mongoTemplate;
+	}
+
+	/**
+	 * Loads the bits assigned so far, on this node or another, and assigns bits to roles that do not have one yet.
+	 */
+	@PostConstruct
+	@Scheduled(fixedDelayString = "${jwt.permissions.refresh-interval:60000}")
+	public void refresh() {
+		try {
+			load();
+			for (Role role : mongoTemplate.findAll(Role.class)) {
+				if (role.getName() != null && !bits.containsKey(role.getName())) bitOf(role.getName());
+			}
+		}
+		catch (Exception e) {
+			log.warn("Unable to refresh permission bits: {}", e.getMessage());
+		}
+	}
+
+	public void register(String name, int bit) {
+		if (bit < 0 || bit >= MAX_PERMISSIONS) throw new IllegalArgumentException("Permission bit out of range: " + bit);
+		if (authorities.compareAndSet(bit, null, new SimpleGrantedAuthority(name))) bits.putIfAbsent(name, bit);
+	}
+
+	public int bitOf(String name) {
+		Integer bit = bits.get(name);
+		return bit != null ? bit : allocate(name);
+	}
+
+	public boolean has(long mask, String name) {
+		Integer bit = bits.get(name);
+		return bit != null && (mask & (1L << bit)) != 0;
+	}
+
+	public long mask(Collection<? extends GrantedAuthority> granted) {
+		long mask = 0;
+		for (GrantedAuthority authority : granted) {
+			if (authority.getAuthority() != null) mask |= 1L << bitOf(authority.getAuthority());
+		}
+		return mask;
+	}
+
+	public long maskOfNames(Collection<String> names) {
+		long mask = 0;
+		for (String name : names) {
+			if (name != null) mask |= 1L << bitOf(name);
+		}
+		return mask;
+	}
+
+	public long maskOfRoles(Collection<Role> roles) {
+		long mask = 0;
+		for (Role role : roles) {
+			if (role.getName() != null) mask |= 1L << bitOf(role.getName());
+		}
+		return mask;
+	}
+
+	public List<GrantedAuthority> authoritiesOf(Collection<Role> roles) {
+		return authorities(maskOfRoles(roles));
+	}
+
+	/**
+	 * Returns the shared authority list for {@code mask}. Bits this node has not seen yet trigger one reload; bits
+	 * that are still unknown afterwards are left out, and the incomplete list is not cached.
+	 */
+	public List<GrantedAuthority> authorities(long mask) {
+		List<GrantedAuthority> cached = authoritySets.get(mask);
+		if (cached != null) return cached;
+		List<GrantedAuthority> decoded = decode(mask);
+		if (decoded == null) {
+			try {
+				load();
+			}
+			catch (Exception e) {
+				log.warn("Unable to reload permission bits: {}", e.getMessage());
+			}
+			decoded = decode(mask);
+		}
+		if (decoded != null) {
+			List<GrantedAuthority> previous = authoritySets.putIfAbsent(mask, decoded);
+			return previous != null ? previous : decoded;
+		}
+		List<GrantedAuthority> known = new ArrayList<>();
+		for (int bit = 0; bit < MAX_PERMISSIONS; bit++) {
+			GrantedAuthority authority = authorities.get(bit);
+			if ((mask & (1L << bit)) != 0 && authority != null) known.add(authority);
+		}
+		log.warn("Permission mask {} has bits that are not assigned", Long.toHexString(mask));
+		return Collections.unmodifiableList(known);
+	}
+
+	private List<GrantedAuthority> decode(long mask) {
+		List<GrantedAuthority> decoded = new ArrayList<>(Long.bitCount(mask));
+		for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+			GrantedAuthority authority = authorities.get(Long.numberOfTrailingZeros(remaining));
+			if (authority == null) return null;
+			decoded.add(authority);
+		}
+		return Collections.unmodifiableList(decoded);
+	}
+
+	private void load() {
+		for (PermissionBit assigned : mongoTemplate.findAll(PermissionBit.class)) {
+			register(assigned.getName(), assigned.getBit());
+		}
+	}
+
+	/**
+	 * Claims the lowest bit that is free on this node. Losing a race to another node shows up as a duplicate key on
+	 * either the name or the bit; both are resolved by reloading and trying again.
+	 */
+	private int allocate(String name) {
+		allocationLock.lock();
+		try {
+			for (int attempt = 0; attempt < MAX_PERMISSIONS; attempt++) {
+				Integer bit = bits.get(name);
+				if (bit != null) return bit;
+				int free = 0;
+				while (free < MAX_PERMISSIONS && authorities.get(free) != null) free++;
+				if (free == MAX_PERMISSIONS) break;
+				try {
+					mongoTemplate.insert(new PermissionBit(name, free));
+					log.info("Assigned permission bit {} to {}", free, name);
+					register(name, free);
+				}
+				catch (DuplicateKeyException e) {
+					load();
+				}
+			}
+			Integer bit = bits.get(name);
+			if (bit != null) return bit;
+			throw new IllegalStateException("No permission bit is left for " + name);
+		}
+		finally {
+			allocationLock.unlock();
+		}
+	}
+}
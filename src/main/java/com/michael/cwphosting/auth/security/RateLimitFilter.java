@@ -0,0 +1,40 @@
+package com.michael.cwphosting.auth.security;
+
+import com.michael.cwphosting.auth.utilities.ResponseBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Turns away requests over the {@link RequestRateLimiter} limits with 429 before authentication, so they never reach
+ * the database, the password encoder or the mail outbox.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+	private final RequestRateLimiter rateLimiter;
+	private final MeterRegistry meterRegistry;
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+		RequestRateLimiter.Rule rule = rateLimiter.ruleFor(request.getMethod(), request.getServletPath());
+		if (rule != null) {
+			long retryAfter = rateLimiter.tryAcquire(rule, request.getRemoteAddr());
+			if (retryAfter > 0) {
+				log.warn("Rate limited {} from {}", rule.getName(), request.getRemoteAddr());
+				meterRegistry.counter("http.rate.limited", "endpoint", rule.getName()).increment();
+				ResponseBuilder.sendTooManyRequests(response, "Too many requests, please try again later", retryAfter);
+				return;
+			}
+		}
+		filterChain.doFilter(request, response);
+	}
+}
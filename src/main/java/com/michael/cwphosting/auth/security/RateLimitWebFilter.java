@@ -0,0 +1,59 @@
+package com.michael.cwphosting.auth.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * WebFlux counterpart of {@link RateLimitFilter}.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RateLimitWebFilter implements WebFilter {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String MESSAGE = "Too many requests, please try again later";
+
+	private final RequestRateLimiter rateLimiter;
+	private final MeterRegistry meterRegistry;
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		ServerHttpRequest request = exchange.getRequest();
+		RequestRateLimiter.Rule rule = rateLimiter.ruleFor(request.getMethodValue(), request.getPath().pathWithinApplication().value());
+		if (rule == null) return chain.filter(exchange);
+		InetSocketAddress remoteAddress = request.getRemoteAddress();
+		String address = remoteAddress == null ? "unknown" : remoteAddress.getAddress().getHostAddress();
+		long retryAfter = rateLimiter.tryAcquire(rule, address);
+		if (retryAfter == 0) return chain.filter(exchange);
+
+		log.warn("Rate limited {} from {}", rule.getName(), address);
+		meterRegistry.counter("http.rate.limited", "endpoint", rule.getName()).increment();
+		ServerHttpResponse response = exchange.getResponse();
+		response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+		response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+		response.getHeaders().set("message", MESSAGE);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		try {
+			DataBuffer body = response.bufferFactory().wrap(MAPPER.writeValueAsBytes(Map.of("message", MESSAGE)));
+			return response.writeWith(Mono.just(body));
+		}
+		catch (Exception e) {
+			return response.setComplete();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.michael.cwphosting.auth.security;
+
+import com.michael.cwphosting.auth.jwt.JwtBearerTokenWebFilter;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.jwt.VerifiedTokenCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+import static org.springframework.http.HttpMethod.OPTIONS;
+import static org.springframework.http.HttpMethod.POST;
+
+/**
+ * Security for the {@code reactive} profile, where the application runs on WebFlux and Netty instead of the
+ * servlet stack configured by {@link SecurityConfig}. The access rules are the same.
+ */
+@Configuration
+@Profile("reactive")
+@EnableWebFluxSecurity
+public class ReactiveSecurityConfig {
+
+	@Value("${jwt.get.token.uri}")
+	private String authenticationPath;
+
+	@Value("${jwt.authorization.stateless:false}")
+	private boolean statelessAuthorization;
+
+	@Bean
+	public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, TokenUtil tokenUtil, ReactiveUserDetailsService userDetailsService,
+														 VerifiedTokenCache verifiedTokenCache, SecurityVersionRegistry securityVersionRegistry,
+														 TokenRevocationRegistry tokenRevocationRegistry, RequestRateLimiter requestRateLimiter,
+														 MeterRegistry meterRegistry) {
+		JwtBearerTokenWebFilter jwtBearerTokenWebFilter = new JwtBearerTokenWebFilter(tokenUtil, userDetailsService, verifiedTokenCache,
+				securityVersionRegistry, tokenRevocationRegistry, meterRegistry, authenticationPath, statelessAuthorization);
+		return http.csrf().disable()
+				.httpBasic().disable()
+				.formLogin().disable()
+				.logout().disable()
+				.securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+				.authorizeExchange(exchanges -> exchanges
+						.pathMatchers(OPTIONS, "/**").permitAll()
+						.pathMatchers(POST, authenticationPath).permitAll()
+						.pathMatchers("/token/**").permitAll()
+						.pathMatchers("/user", "/user/**").permitAll()
+						.pathMatchers("/users/**").hasAnyAuthority("ADMIN")
+						.pathMatchers("/actuator/health/**").permitAll()
+						.pathMatchers("/actuator/**").hasAnyAuthority("ADMIN")
+						.anyExchange().authenticated())
+				.addFilterBefore(new RateLimitWebFilter(requestRateLimiter, meterRegistry), SecurityWebFiltersOrder.AUTHENTICATION)
+				.addFilterAt(jwtBearerTokenWebFilter, SecurityWebFiltersOrder.AUTHENTICATION)
+				.build();
+	}
+
+	/**
+	 * Tomcat is on the classpath for the servlet mode and would otherwise be picked to host WebFlux as well.
+	 */
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+}
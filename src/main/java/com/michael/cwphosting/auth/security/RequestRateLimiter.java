@@ -0,0 +1,116 @@
+package com.michael.cwphosting.auth.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets per client address and endpoint for the unauthenticated endpoints that cost a database write, a
+ * password hash or an email. Each bucket is one {@link AtomicLong} packing the available tokens in thousandths (high
+ * 32 bits) and the time of the last refill in milliseconds (low 32 bits), so taking a token is one CAS. Buckets live
+ * in a size-bounded cache and are dropped after sitting idle, by which time they would have refilled anyway.
+ */
+@Component
+public class RequestRateLimiter {
+
+	private static final long MASK = 0xFFFFFFFFL;
+	private static final long TOKEN = 1000;
+
+	private final boolean enabled;
+	private final Map<String, Rule> rules;
+	private final Cache<String, AtomicLong> buckets;
+	private final LongSupplier clock;
+
+	@Autowired
+	public RequestRateLimiter(@Value("${spring.user.rate-limit.enabled:true}") boolean enabled,
+							  @Value("${jwt.get.token.uri}") String authenticationPath,
+							  @Value("${spring.user.rate-limit.login.capacity:10}") int loginCapacity,
+							  @Value("${spring.user.rate-limit.login.per-minute:30}") int loginPerMinute,
+							  @Value("${spring.user.rate-limit.mail.capacity:3}") int mailCapacity,
+							  @Value("${spring.user.rate-limit.mail.per-minute:6}") int mailPerMinute,
+							  @Value("${spring.user.rate-limit.max-size:100000}") long maxSize,
+							  @Value("${spring.user.rate-limit.idle-timeout:600}") long idleTimeout,
+							  MeterRegistry meterRegistry) {
+		this(enabled, Map.of(
+				"POST " + authenticationPath, new Rule("login", loginCapacity, loginPerMinute),
+				"POST /user", new Rule("sign-up", mailCapacity, mailPerMinute),
+				"POST /user/forgotten-password", new Rule("forgotten-password", mailCapacity, mailPerMinute),
+				"POST /user/activation-token/resend", new Rule("activation-resend", mailCapacity, mailPerMinute)
+		), maxSize, idleTimeout, () -> System.nanoTime() / 1_000_000);
+		Gauge.builder("http.rate.limit.buckets", buckets, Cache::estimatedSize).register(meterRegistry);
+	}
+
+	RequestRateLimiter(boolean enabled, Map<String, Rule> rules, long maxSize, long idleTimeout, LongSupplier clock) {
+		this.enabled = enabled;
+		this.rules = rules;
+		this.clock = clock;
+		this.buckets = Caffeine.newBuilder().expireAfterAccess(Duration.ofSeconds(idleTimeout)).maximumSize(maxSize).build();
+	}
+
+	/**
+	 * Returns the rule the request is limited under, or null when it is not rate limited.
+	 */
+	public Rule ruleFor(String method, String path) {
+		if (!enabled) return null;
+		if (path.length() > 1 && path.endsWith("/")) path = path.substring(0, path.length() - 1);
+		return rules.get(method + " " + path);
+	}
+
+	/**
+	 * Takes a token from the bucket of {@code address} under {@code rule}. Returns 0 when the request may go ahead,
+	 * otherwise the number of seconds until a token will be available.
+	 */
+	public long tryAcquire(Rule rule, String address) {
+		long now = clock.getAsLong() & MASK;
+		AtomicLong bucket = buckets.get(rule.name + "|" + address, key -> new AtomicLong(pack(rule.capacity, now)));
+		while (true) {
+			long state = bucket.get();
+			long last = state & MASK;
+			long refill = ((now - last) & MASK) * rule.perMinute / 60;
+			long tokens = (state >>> 32) + refill;
+			long stamp;
+			if (tokens >= rule.capacity) {
+				tokens = rule.capacity;
+				stamp = now;
+			}
+			else {
+				// only advance the clock by the time that was turned into tokens, so fractions carry over
+				stamp = last + refill * 60 / rule.perMinute;
+			}
+			if (tokens < TOKEN) {
+				long waitMillis = ((TOKEN - tokens) * 60 + rule.perMinute - 1) / rule.perMinute;
+				return Math.max(1, (waitMillis + 999) / 1000);
+			}
+			if (bucket.compareAndSet(state, pack(tokens - TOKEN, stamp))) return 0;
+		}
+	}
+
+	private static long pack(long tokens, long millis) {
+		return (tokens << 32) | (millis & MASK);
+	}
+
+	public static class Rule {
+		private final String name;
+		private final long capacity;
+		private final long perMinute;
+
+		Rule(String name, int capacity, int perMinute) {
+			this.name = name;
+			this.capacity = capacity * TOKEN;
+			this.perMinute = Math.max(1, perMinute);
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+}
@@ -4,13 +4,16 @@ import com.michael.cwphosting.auth.jwt.JwtAuthenticationFilter;
 import com.michael.cwphosting.auth.jwt.JwtTokenAuthorizationOncePerRequestFilter;
 import com.michael.cwphosting.auth.jwt.JwtUnAuthorizedResponseAuthenticationEntryPoint;
 import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.jwt.VerifiedTokenCache;
 import com.michael.cwphosting.auth.services.RefreshTokenService;
 import com.michael.cwphosting.auth.services.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -28,6 +31,7 @@ import static org.springframework.http.HttpMethod.GET;
 import static org.springframework.http.HttpMethod.POST;
 
 @EnableGlobalMethodSecurity(prePostEnabled = true)
+@Profile("!reactive")
 @Configuration
 @EnableWebSecurity
 @RequiredArgsConstructor
@@ -38,12 +42,17 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 	SecretConfig secret;
 	private JwtUnAuthorizedResponseAuthenticationEntryPoint jwtUnAuthorizedResponseAuthenticationEntryPoint;
 	private RefreshTokenService refreshTokenService;
+	private VerifiedTokenCache verifiedTokenCache;
+	private SecurityVersionRegistry securityVersionRegistry;
+	private TokenRevocationRegistry tokenRevocationRegistry;
+	private RequestRateLimiter requestRateLimiter;
+	private MeterRegistry meterRegistry;
 
 	@Value("${jwt.get.token.uri}")
 	private String authenticationPath;
 
-	@Value("/register")
-	private String registerPath;
+	@Value("${jwt.authorization.stateless:false}")
+	private boolean statelessAuthorization;
 
 	@Autowired
 	public void setJwtUnAuthorizedResponseAuthenticationEntryPoint(JwtUnAuthorizedResponseAuthenticationEntryPoint jwtUnAuthorizedResponseAuthenticationEntryPoint) {
@@ -65,6 +74,31 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 		this.refreshTokenService = refreshTokenService;
 	}
 
+	@Autowired
+	public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+		this.verifiedTokenCache = verifiedTokenCache;
+	}
+
+	@Autowired
+	public void setSecurityVersionRegistry(SecurityVersionRegistry securityVersionRegistry) {
+		this.securityVersionRegistry = securityVersionRegistry;
+	}
+
+	@Autowired
+	public void setTokenRevocationRegistry(TokenRevocationRegistry tokenRevocationRegistry) {
+		this.tokenRevocationRegistry = tokenRevocationRegistry;
+	}
+
+	@Autowired
+	public void setRequestRateLimiter(RequestRateLimiter requestRateLimiter) {
+		this.requestRateLimiter = requestRateLimiter;
+	}
+
+	@Autowired
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
 	@Bean
 	@Override
 	public AuthenticationManager authenticationManagerBean() throws Exception {
@@ -83,17 +117,22 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 			.exceptionHandling().authenticationEntryPoint(jwtUnAuthorizedResponseAuthenticationEntryPoint).and()
 			.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
 
+		http.authorizeRequests().antMatchers(POST, authenticationPath).permitAll();
 		http.authorizeRequests().antMatchers("/token/**").permitAll();
 		http.authorizeRequests().antMatchers("/user/**").permitAll();
 		http.authorizeRequests().antMatchers("/users/**").hasAnyAuthority("ADMIN");
+		http.authorizeRequests().antMatchers("/actuator/health/**").permitAll();
+		http.authorizeRequests().antMatchers("/actuator/**").hasAnyAuthority("ADMIN");
 
 		http.authorizeRequests().anyRequest().authenticated();
 
-		JwtAuthenticationFilter jwtAuthenticationFilter = new JwtAuthenticationFilter(authenticationManagerBean(), tokenUtil, userService, refreshTokenService );
+		JwtAuthenticationFilter jwtAuthenticationFilter = new JwtAuthenticationFilter(authenticationManagerBean(), tokenUtil, userService, refreshTokenService, meterRegistry);
+		jwtAuthenticationFilter.setFilterProcessesUrl(authenticationPath);
 		http.addFilter(jwtAuthenticationFilter);
 
-		JwtTokenAuthorizationOncePerRequestFilter jwtAuthenticationTokenFilter = new JwtTokenAuthorizationOncePerRequestFilter(tokenUtil, userService);
+		JwtTokenAuthorizationOncePerRequestFilter jwtAuthenticationTokenFilter = new JwtTokenAuthorizationOncePerRequestFilter(tokenUtil, userService, verifiedTokenCache, securityVersionRegistry, tokenRevocationRegistry, meterRegistry, statelessAuthorization);
 		http.addFilterBefore(jwtAuthenticationTokenFilter, UsernamePasswordAuthenticationFilter.class);
+		http.addFilterBefore(new RateLimitFilter(requestRateLimiter, meterRegistry), JwtTokenAuthorizationOncePerRequestFilter.class);
 
 		http.headers().cacheControl(); //disable caching
 		//.frameOptions().sameOrigin()  //H2 Console Needs this setting
@@ -103,9 +142,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
 	@Override
 	public void configure(WebSecurity webSecurity) throws Exception {
 		webSecurity
-				.ignoring().antMatchers(HttpMethod.POST, authenticationPath)
-				.antMatchers(HttpMethod.OPTIONS, "/**")
-				.and().ignoring().antMatchers(HttpMethod.POST, registerPath)
+				.ignoring().antMatchers(HttpMethod.OPTIONS, "/**")
 				.and().ignoring().antMatchers(HttpMethod.GET, "/"); //Other Stuff You want to Ignore
 				//.and().ignoring().antMatchers("/h2-console/**/**");//Should not be in Production!
 	}
@@ -0,0 +1,66 @@
+package com.michael.cwphosting.auth.security;
+
+import com.michael.cwphosting.auth.models.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory table of per-user security versions. A user's version is bumped whenever a change must invalidate
+ * access tokens that are already out there (suspension, role change). Only users whose version was ever bumped
+ * are held here, so the table stays small; everyone else is implicitly at version 0.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SecurityVersionRegistry {
+
+	private static final long REFRESH_OVERLAP_SECONDS = 30;
+
+	private final MongoTemplate mongoTemplate;
+	private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<>();
+	private volatile LocalDateTime lastRefresh;
+
+	public long currentVersion(String username) {
+		return versions.getOrDefault(username, 0L);
+	}
+
+	public boolean isCurrent(String username, Long tokenVersion) {
+		long current = currentVersion(username);
+		return tokenVersion == null ? current == 0 : tokenVersion >= current;
+	}
+
+	public void bump(String username, long version) {
+		versions.merge(username, version, Math::max);
+	}
+
+	@Scheduled(fixedDelayString = "${jwt.security-version.refresh-interval:5000}")
+	public void refresh() {
+		LocalDateTime started = LocalDateTime.now();
+		Query query = new Query();
+		if (lastRefresh == null) {
+			query.addCriteria(Criteria.where("securityVersionChanged").exists(true));
+		}
+		else {
+			query.addCriteria(Criteria.where("securityVersionChanged").gt(lastRefresh.minusSeconds(REFRESH_OVERLAP_SECONDS)));
+		}
+		query.fields().include("email").include("securityVersion");
+		try {
+			List<User> changed = mongoTemplate.find(query, User.class);
+			changed.forEach(user -> bump(user.getEmail(), user.getSecurityVersion()));
+			if (lastRefresh == null) log.info("Loaded {} security versions", changed.size());
+			lastRefresh = started;
+		}
+		catch (Exception e) {
+			log.warn("Unable to refresh security versions: {}", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.michael.cwphosting.auth.security;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.models.RevokedToken;
+import com.michael.cwphosting.auth.utilities.BloomFilter;
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory denylist of revoked access tokens, checked on every authorized request without touching the database.
+ * Single tokens are held by {@code jti} behind a Bloom filter, so the common case of a token that was never revoked
+ * costs a few bit lookups; revoke-all entries are held as a per-user cutoff on {@code iat}. Every node appends its
+ * revocations to a capped collection and tails it to pick up the others'. Entries are dropped once every token they
+ * could match has expired.
+ */
+@Component
+@Slf4j
+public class TokenRevocationRegistry {
+
+	private static final String COLLECTION = "revoked_tokens";
+	private static final long REOPEN_OVERLAP_MILLIS = 30000;
+	private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+	private final MongoTemplate mongoTemplate;
+	private final TokenUtil tokenUtil;
+	private final ConcurrentHashMap<String, Long> revokedTokens = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, RevokedToken> userCutoffs = new ConcurrentHashMap<>();
+	private final int expectedInsertions;
+	private volatile BloomFilter bloomFilter;
+	private volatile boolean running;
+	private volatile Date lastSeen;
+	private ExecutorService tailer;
+
+	@Value("${jwt.revocation.capped-size:16777216}")
+	private long cappedSize;
+
+	@Value("${jwt.revocation.poll-interval:1000}")
+	private long pollInterval;
+
+	@Value("${jwt.revocation.tailable:true}")
+	private boolean tailable;
+
+	public TokenRevocationRegistry(MongoTemplate mongoTemplate, TokenUtil tokenUtil, MeterRegistry meterRegistry,
+								   @Value("${jwt.revocation.bloom.expected-insertions:100000}") int expectedInsertions) {
+		this.mongoTemplate = mongoTemplate;
+		this.tokenUtil = tokenUtil;
+		this.expectedInsertions = expectedInsertions;
+		this.bloomFilter = new BloomFilter(expectedInsertions, BLOOM_FALSE_POSITIVE_RATE);
+		Gauge.builder("auth.token.revocations", revokedTokens, ConcurrentHashMap::size).tag("kind", "token").register(meterRegistry);
+		Gauge.builder("auth.token.revocations", userCutoffs, ConcurrentHashMap::size).tag("kind", "user").register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void start() {
+		try {
+			if (cappedSize > 0 && !mongoTemplate.collectionExists(COLLECTION)) {
+				mongoTemplate.createCollection(COLLECTION, CollectionOptions.empty().capped().size(cappedSize));
+			}
+		}
+		catch (Exception e) {
+			log.warn("Unable to create the {} collection: {}", COLLECTION, e.getMessage());
+		}
+		lastSeen = new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(tokenUtil.getTokenExpiration()));
+		running = true;
+		tailer = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("token-revocations-"));
+		tailer.execute(this::tail);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		running = false;
+		if (tailer == null) return;
+		tailer.shutdownNow();
+		tailer.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	public boolean isRevoked(DecodedJWT token) {
+		String jti = token.getId();
+		if (jti != null && bloomFilter.mightContain(jti) && revokedTokens.containsKey(jti)) return true;
+		RevokedToken cutoff = userCutoffs.get(token.getSubject());
+		if (cutoff == null) return false;
+		Long issuedAt = tokenUtil.getIssuedAtMillis(token);
+		return issuedAt == null || issuedAt <= cutoff.getRevokedAt().getTime();
+	}
+
+	/**
+	 * Whether the holder of an access token may revoke every token of {@code username}: the token has to verify, carry
+	 * a {@code jti}, not be revoked itself, and belong to that user or to an administrator.
+	 */
+	public boolean mayRevokeAll(String token, String username) {
+		DecodedJWT decoded;
+		try {
+			decoded = tokenUtil.getDecodedToken(token);
+		}
+		catch (JWTVerificationException e) {
+			return false;
+		}
+		if (decoded.getId() == null || !tokenUtil.validateToken(decoded) || isRevoked(decoded)) return false;
+		if (username.equals(decoded.getSubject())) return true;
+		return tokenUtil.hasAuthority(decoded, "ADMIN");
+	}
+
+	/**
+	 * Revokes an access token. Returns false when the token does not verify or carries no {@code jti}, which is the
+	 * case for refresh tokens and for access tokens issued before ids were added.
+	 */
+	public boolean revoke(String token) {
+		DecodedJWT decoded;
+		try {
+			decoded = tokenUtil.getDecodedToken(token);
+		}
+		catch (JWTVerificationException e) {
+			return false;
+		}
+		if (decoded.getId() == null) return false;
+		publish(RevokedToken.token(decoded.getId(), decoded.getSubject(), decoded.getExpiresAt()));
+		return true;
+	}
+
+	public void revokeAll(String username) {
+		Date expires = new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(tokenUtil.getTokenExpiration()));
+		publish(RevokedToken.allTokens(username, expires));
+	}
+
+	@Scheduled(fixedDelayString = "${jwt.revocation.prune-interval:60000}")
+	public void prune() {
+		long now = System.currentTimeMillis();
+		revokedTokens.values().removeIf(expires -> expires < now);
+		userCutoffs.values().removeIf(cutoff -> cutoff.getExpires().getTime() < now);
+		BloomFilter rebuilt = new BloomFilter(Math.max(expectedInsertions, revokedTokens.size() * 2), BLOOM_FALSE_POSITIVE_RATE);
+		revokedTokens.keySet().forEach(rebuilt::put);
+		bloomFilter = rebuilt;
+		// a revocation that went into the old filter while this one was filled is picked up here
+		revokedTokens.keySet().forEach(rebuilt::put);
+	}
+
+	private void publish(RevokedToken revoked) {
+		apply(revoked);
+		mongoTemplate.insert(revoked, COLLECTION);
+	}
+
+	private void apply(RevokedToken revoked) {
+		if (revoked.getExpires() == null || revoked.getExpires().getTime() < System.currentTimeMillis()) return;
+		if (revoked.getJti() != null) {
+			revokedTokens.put(revoked.getJti(), revoked.getExpires().getTime());
+			bloomFilter.put(revoked.getJti());
+		}
+		else if (revoked.getUsername() != null) {
+			userCutoffs.merge(revoked.getUsername(), revoked,
+					(current, update) -> update.getRevokedAt().after(current.getRevokedAt()) ? update : current);
+		}
+	}
+
+	/**
+	 * Follows the capped collection with a tailable cursor. When the cursor dies (the collection rolled over, the
+	 * connection dropped, or the server does not support tailing) it is reopened from slightly before the last entry
+	 * seen; applying an entry twice is harmless. After a failure the next pass is a plain query, so a server that
+	 * rejects tailable cursors is still polled; with {@code jwt.revocation.tailable=false} it is only ever polled.
+	 */
+	private void tail() {
+		boolean tailable = this.tailable;
+		while (running && !Thread.currentThread().isInterrupted()) {
+			Date from = new Date(lastSeen.getTime() - REOPEN_OVERLAP_MILLIS);
+			try (MongoCursor<Document> cursor = mongoTemplate.getCollection(COLLECTION)
+					.find(Filters.gte("revokedAt", from))
+					.cursorType(tailable ? CursorType.TailableAwait : CursorType.NonTailable)
+					.maxAwaitTime(pollInterval, TimeUnit.MILLISECONDS)
+					.iterator()) {
+				while (running) {
+					Document document = cursor.tryNext();
+					if (document == null) {
+						if (cursor.getServerCursor() == null) break;
+						continue;
+					}
+					RevokedToken revoked = mongoTemplate.getConverter().read(RevokedToken.class, document);
+					apply(revoked);
+					if (revoked.getRevokedAt() != null && revoked.getRevokedAt().after(lastSeen)) lastSeen = revoked.getRevokedAt();
+				}
+				tailable = this.tailable;
+			}
+			catch (Exception e) {
+				if (!running) return;
+				log.debug("Token revocation cursor closed: {}", e.getMessage());
+				tailable = false;
+			}
+			try {
+				Thread.sleep(pollInterval);
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Periodically removes accounts that were not activated within {@code jwt.account.activation.expire} and clears
+ * password reset tokens that have expired. The TTL index on {@code activationExpires} normally removes such accounts
+ * first; sweeping as well covers servers without a TTL monitor and keeps the user cache from serving them. Accounts
+ * created before {@code activationExpires} was introduced have no expiry, so for those the creation date is used. The
+ * queries are served by the sparse indexes on the expiry fields and on the activation token.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AccountTokenSweeper {
+
+	private final MongoTemplate mongoTemplate;
+	private final UserCache userCache;
+
+	@Value("${jwt.account.activation.expire}")
+	private Long accountActivationExpire;
+
+	@Scheduled(fixedDelayString = "${spring.user.token-sweep.interval:600000}")
+	public void sweep() {
+		LocalDateTime now = LocalDateTime.now();
+
+		Query unactivated = new Query(new Criteria().orOperator(
+				Criteria.where("activationExpires").lt(now),
+				Criteria.where("activationToken").exists(true).and("activationExpires").exists(false)
+						.and("created").lt(now.minusSeconds(accountActivationExpire))));
+		unactivated.fields().include("email");
+		List<User> removed = mongoTemplate.findAllAndRemove(unactivated, User.class);
+		removed.forEach(user -> userCache.invalidate(user.getEmail()));
+
+		Query expiredResets = new Query(Criteria.where("forgottenPasswordTokenExpire").lt(now));
+		Update clear = new Update().unset("forgottenPasswordToken").unset("forgottenPasswordTokenExpire");
+		long cleared = mongoTemplate.updateMulti(expiredResets, clear, User.class).getModifiedCount();
+
+		if (!removed.isEmpty() || cleared > 0) {
+			log.info("Removed {} accounts that were never activated and cleared {} expired password reset tokens", removed.size(), cleared);
+		}
+	}
+}
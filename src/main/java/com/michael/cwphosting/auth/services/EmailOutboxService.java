@@ -0,0 +1,223 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.OutboxMessage;
+import com.michael.cwphosting.auth.repository.OutboxMessageRepository;
+import com.michael.cwphosting.auth.utilities.VirtualThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mongo-backed queue for outgoing mail. Request threads only insert a message; a fixed pool of workers claims due
+ * messages with findAndModify, sends them and either marks them sent or reschedules them with exponential backoff
+ * until they are dead-lettered.
+ */
+@Service
+@Slf4j
+public class EmailOutboxService implements EmailOutboxServiceInterface {
+
+	private final OutboxMessageRepository repository;
+	private final MongoTemplate mongoTemplate;
+	private final EmailSenderServiceInterface emailSenderService;
+	private final EmailTemplateEngine templateEngine;
+	private final Semaphore wakeUp = new Semaphore(0);
+	private final Counter sent;
+	private final Counter retried;
+	private final Counter deadLettered;
+	private final Timer sendLatency;
+	private final Timer deliveryDelay;
+
+	@Value("${spring.mail.from}")
+	private String defaultFrom;
+
+	@Value("${spring.mail.outbox.enabled:true}")
+	private boolean enabled;
+
+	@Value("${spring.mail.outbox.workers:2}")
+	private int workers;
+
+	@Value("${spring.mail.outbox.max-attempts:8}")
+	private int maxAttempts;
+
+	@Value("${spring.mail.outbox.backoff:30}")
+	private long backoff;
+
+	@Value("${spring.mail.outbox.max-backoff:3600}")
+	private long maxBackoff;
+
+	@Value("${spring.mail.outbox.poll-interval:5000}")
+	private long pollInterval;
+
+	@Value("${spring.mail.outbox.lease:300}")
+	private long lease;
+
+	@Value("${spring.threads.virtual.enabled:false}")
+	private boolean virtualThreads;
+
+	private volatile boolean running;
+	private ExecutorService executor;
+
+	public EmailOutboxService(OutboxMessageRepository repository, MongoTemplate mongoTemplate,
+							  EmailSenderServiceInterface emailSenderService, EmailTemplateEngine templateEngine, MeterRegistry meterRegistry) {
+		this.repository = repository;
+		this.mongoTemplate = mongoTemplate;
+		this.emailSenderService = emailSenderService;
+		this.templateEngine = templateEngine;
+		this.sent = meterRegistry.counter("mail.outbox.messages", "result", "sent");
+		this.retried = meterRegistry.counter("mail.outbox.messages", "result", "retried");
+		this.deadLettered = meterRegistry.counter("mail.outbox.messages", "result", "dead");
+		this.sendLatency = Timer.builder("mail.outbox.send").publishPercentileHistogram().register(meterRegistry);
+		this.deliveryDelay = Timer.builder("mail.outbox.delivery.delay").publishPercentileHistogram().register(meterRegistry);
+		Gauge.builder("mail.outbox.depth", this, EmailOutboxService::getQueueDepth).register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void start() {
+		if(!enabled) return;
+		running = true;
+		ThreadFactory threadFactory = virtualThreads ? VirtualThreads.factory("email-outbox-") : new CustomizableThreadFactory("email-outbox-");
+		executor = Executors.newFixedThreadPool(workers, threadFactory);
+		for(int i = 0; i < workers; i++){
+			executor.execute(this::drain);
+		}
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if(executor == null) return;
+		running = false;
+		wakeUp.release(workers);
+		executor.shutdown();
+		if(!executor.awaitTermination(10, TimeUnit.SECONDS)) executor.shutdownNow();
+	}
+
+	@Override
+	public OutboxMessage enqueue(String to, String from, String subject, String htmlBody, String textBody) {
+		OutboxMessage message = repository.insert(OutboxMessage.pending(to, from, subject, htmlBody, textBody));
+		wakeUp.release();
+		return message;
+	}
+
+	@Override
+	public OutboxMessage enqueue(String to, String template, Map<String, ?> variables) {
+		RenderedEmail email = templateEngine.render(template, variables);
+		return enqueue(to, defaultFrom, email.getSubject(), email.getHtmlBody(), email.getTextBody());
+	}
+
+	/**
+	 * Renders {@code template} once per recipient and queues all of the messages with a single insert.
+	 */
+	@Override
+	public List<OutboxMessage> enqueueAll(String template, Map<String, ? extends Map<String, ?>> variablesByRecipient) {
+		List<OutboxMessage> messages = new ArrayList<>(variablesByRecipient.size());
+		variablesByRecipient.forEach((to, variables) -> {
+			try {
+				RenderedEmail email = templateEngine.render(template, variables);
+				messages.add(OutboxMessage.pending(to, defaultFrom, email.getSubject(), email.getHtmlBody(), email.getTextBody()));
+			}
+			catch (RuntimeException e) {
+				// one bad recipient must not cost the others their mail
+				log.warn("Unable to render {} for {}: {}", template, to, e.getMessage());
+			}
+		});
+		if (messages.isEmpty()) return messages;
+		List<OutboxMessage> inserted = repository.insert(messages);
+		wakeUp.release(Math.min(inserted.size(), workers));
+		return inserted;
+	}
+
+	@Override
+	public long getQueueDepth() {
+		return repository.countByStatus(OutboxMessage.Status.PENDING);
+	}
+
+	private void drain() {
+		while(running){
+			try {
+				OutboxMessage message = claimNext();
+				if(message == null){
+					wakeUp.tryAcquire(pollInterval, TimeUnit.MILLISECONDS);
+					continue;
+				}
+				deliver(message);
+			}
+			catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (Exception e){
+				log.warn("Email outbox worker error: {}", e.getMessage());
+				try {
+					Thread.sleep(pollInterval);
+				}
+				catch (InterruptedException ie){
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private OutboxMessage claimNext() {
+		LocalDateTime now = LocalDateTime.now();
+		Query query = new Query(new Criteria().orOperator(
+				Criteria.where("status").is(OutboxMessage.Status.PENDING).and("nextAttemptAt").lte(now),
+				Criteria.where("status").is(OutboxMessage.Status.SENDING).and("lockedUntil").lt(now)
+		)).with(Sort.by("nextAttemptAt"));
+		Update update = new Update().set("status", OutboxMessage.Status.SENDING).set("lockedUntil", now.plusSeconds(lease));
+		return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), OutboxMessage.class);
+	}
+
+	private void deliver(OutboxMessage message) {
+		Query query = new Query(Criteria.where("_id").is(message.getId()));
+		Timer.Sample sample = Timer.start();
+		try {
+			emailSenderService.send(message);
+			sample.stop(sendLatency);
+			deliveryDelay.record(Duration.between(message.getCreated(), LocalDateTime.now()));
+			mongoTemplate.updateFirst(query, new Update().set("status", OutboxMessage.Status.SENT)
+					.set("sentAt", LocalDateTime.now()).unset("lockedUntil"), OutboxMessage.class);
+			sent.increment();
+		}
+		catch (Exception e){
+			int attempts = message.getAttempts() + 1;
+			Update update = new Update().set("attempts", attempts).set("lastError", e.getMessage()).unset("lockedUntil");
+			if(attempts >= maxAttempts){
+				log.error("Giving up on email to {} after {} attempts: {}", message.getTo(), attempts, e.getMessage());
+				update.set("status", OutboxMessage.Status.DEAD);
+				deadLettered.increment();
+			}
+			else {
+				long delay = Math.min(maxBackoff, backoff << Math.min(attempts - 1, 20));
+				log.warn("Email to {} failed, retrying in {} seconds: {}", message.getTo(), delay, e.getMessage());
+				update.set("status", OutboxMessage.Status.PENDING).set("nextAttemptAt", LocalDateTime.now().plusSeconds(delay));
+				retried.increment();
+			}
+			mongoTemplate.updateFirst(query, update, OutboxMessage.class);
+		}
+	}
+}
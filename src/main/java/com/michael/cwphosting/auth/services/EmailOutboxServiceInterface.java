@@ -0,0 +1,13 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.OutboxMessage;
+
+import java.util.List;
+import java.util.Map;
+
+public interface EmailOutboxServiceInterface {
+	OutboxMessage enqueue(String to, String from, String subject, String htmlBody, String textBody);
+	OutboxMessage enqueue(String to, String template, Map<String, ?> variables);
+	List<OutboxMessage> enqueueAll(String template, Map<String, ? extends Map<String, ?>> variablesByRecipient);
+	long getQueueDepth();
+}
@@ -1,31 +1,91 @@
 package com.michael.cwphosting.auth.services;
 
-import lombok.AllArgsConstructor;
+import com.michael.cwphosting.auth.models.OutboxMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.mail.DefaultAuthenticator;
+import org.apache.commons.mail.EmailException;
 import org.apache.commons.mail.HtmlEmail;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
 @Service
+@Profile("!inmemory")
 @Slf4j
-@Getter
-public class EmailSenderService extends HtmlEmail {
+public class EmailSenderService implements EmailSenderServiceInterface, MeterBinder {
 
-	private String appName;
-	private String appUrl;
+	@Getter
+	private final String appName;
+	@Getter
+	private final String appUrl;
+	private final Session session;
+	private final SmtpTransportPool pool;
 
 	public EmailSenderService(@Value("${spring.mail.host}")String hostName, @Value("${spring.mail.port}") int port, @Value("${spring.mail.username}") String username,
 							  @Value("${spring.mail.password}") String password,@Value("${spring.mail.ssl}") boolean ssl, @Value("${spring.application.name}") String appName,
-							  @Value("${spring.application.base-url}") String appUrl) {
-		super();
-		setHostName(hostName);
-		setSmtpPort(port);
-		setAuthenticator(new DefaultAuthenticator(username, password));
-		setSSLOnConnect(ssl);
+							  @Value("${spring.application.base-url}") String appUrl, @Value("${spring.mail.pool.max-size:4}") int poolSize,
+							  @Value("${spring.mail.pool.idle-timeout:60}") long idleTimeout, @Value("${spring.mail.pool.borrow-timeout:30}") long borrowTimeout) {
 		this.appName = appName;
 		this.appUrl = appUrl;
+		HtmlEmail settings = new HtmlEmail();
+		settings.setHostName(hostName);
+		settings.setSmtpPort(port);
+		settings.setAuthenticator(new DefaultAuthenticator(username, password));
+		settings.setSSLOnConnect(ssl);
+		try {
+			this.session = settings.getMailSession();
+		}
+		catch (EmailException e) {
+			throw new IllegalStateException("Invalid mail settings: " + e.getMessage(), e);
+		}
+		this.pool = new SmtpTransportPool(session, poolSize, idleTimeout * 1000, borrowTimeout * 1000);
+	}
+
+	@Override
+	public void send(OutboxMessage message) throws EmailException {
+		HtmlEmail email = new HtmlEmail();
+		email.setMailSession(session);
+		email.addTo(message.getTo());
+		email.setFrom(message.getFrom());
+		email.setSubject(message.getSubject());
+		email.setHtmlMsg(message.getHtmlBody());
+		email.setTextMsg(message.getTextBody());
+		email.buildMimeMessage();
+		try {
+			pool.send(email.getMimeMessage());
+		}
+		catch (MessagingException e) {
+			throw new EmailException("Sending the email to the following server failed : " + session.getProperty("mail.smtp.host"), e);
+		}
+	}
+
+	public long getConnectionsOpened() {
+		return pool.getConnectionsOpened();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("mail.smtp.connections.opened", pool, SmtpTransportPool::getConnectionsOpened).register(registry);
+		Gauge.builder("mail.smtp.connections.idle", pool, SmtpTransportPool::getIdleCount).register(registry);
+	}
+
+	@Scheduled(fixedDelayString = "${spring.mail.pool.eviction-interval:30000}")
+	public void evictIdleConnections() {
+		pool.evictIdle();
+	}
+
+	@PreDestroy
+	public void close() {
+		pool.close();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.OutboxMessage;
+import org.apache.commons.mail.EmailException;
+
+public interface EmailSenderServiceInterface {
+	void send(OutboxMessage message) throws EmailException;
+	String getAppName();
+	String getAppUrl();
+}
@@ -0,0 +1,72 @@
+package com.michael.cwphosting.auth.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template compiled once into alternating literal and variable segments. Rendering is a single pass that
+ * appends literals as they are and substitutes {@code {{name}}} placeholders, HTML-escaping them when asked to.
+ * A variable without a value renders as an empty string, so one incomplete record cannot stop its mail.
+ */
+class EmailTemplate {
+
+	private static final String OPEN = "{{";
+	private static final String CLOSE = "}}";
+
+	private final String[] literals;
+	private final String[] variables;
+	private final int literalLength;
+
+	private EmailTemplate(String[] literals, String[] variables, int literalLength) {
+		this.literals = literals;
+		this.variables = variables;
+		this.literalLength = literalLength;
+	}
+
+	static EmailTemplate compile(String source) {
+		List<String> literals = new ArrayList<>();
+		List<String> variables = new ArrayList<>();
+		int literalLength = 0;
+		int position = 0;
+		while (true) {
+			int open = source.indexOf(OPEN, position);
+			if (open < 0) break;
+			int close = source.indexOf(CLOSE, open + OPEN.length());
+			if (close < 0) throw new IllegalArgumentException("Unclosed placeholder at offset " + open);
+			literals.add(source.substring(position, open));
+			literalLength += open - position;
+			variables.add(source.substring(open + OPEN.length(), close).trim());
+			position = close + CLOSE.length();
+		}
+		literals.add(source.substring(position));
+		literalLength += source.length() - position;
+		return new EmailTemplate(literals.toArray(new String[0]), variables.toArray(new String[0]), literalLength);
+	}
+
+	String render(Map<String, ?> values, boolean escapeHtml) {
+		StringBuilder builder = new StringBuilder(literalLength + variables.length * 32);
+		for (int i = 0; i < variables.length; i++) {
+			builder.append(literals[i]);
+			Object value = values.get(variables[i]);
+			if (value == null) continue;
+			if (escapeHtml) appendEscaped(builder, value.toString());
+			else builder.append(value);
+		}
+		return builder.append(literals[variables.length]).toString();
+	}
+
+	private static void appendEscaped(StringBuilder builder, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '&': builder.append("&amp;"); break;
+				case '<': builder.append("&lt;"); break;
+				case '>': builder.append("&gt;"); break;
+				case '"': builder.append("&quot;"); break;
+				case '\'': builder.append("&#39;"); break;
+				default: builder.append(c);
+			}
+		}
+	}
+}
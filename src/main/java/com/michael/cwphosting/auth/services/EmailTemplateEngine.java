@@ -0,0 +1,79 @@
+package com.michael.cwphosting.auth.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads every {@code templates/email/<name>.html} together with its {@code .txt} and {@code .subject} siblings at
+ * startup and compiles them. Adding a template is a matter of dropping the three files on the classpath. A native
+ * image cannot list the classpath, so when the scan finds nothing the templates named in {@code spring.mail.templates}
+ * are loaded directly instead.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class EmailTemplateEngine {
+
+	private static final String LOCATION = "classpath*:templates/email/";
+	private static final String FIXED_LOCATION = "classpath:templates/email/";
+
+	private final EmailSenderServiceInterface emailSenderService;
+	private final Map<String, CompiledTemplate> templates = new HashMap<>();
+
+	@Value("${spring.mail.templates:confirm-account,password-reset,account-suspended,account-expiry-warning}")
+	private List<String> knownTemplates;
+
+	@PostConstruct
+	public void load() throws IOException {
+		PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+		Resource[] found = resolver.getResources(LOCATION + "*.html");
+		if (found.length == 0) {
+			found = knownTemplates.stream().map(name -> resolver.getResource(FIXED_LOCATION + name + ".html")).filter(Resource::exists).toArray(Resource[]::new);
+		}
+		for (Resource html : found) {
+			String name = html.getFilename().substring(0, html.getFilename().length() - ".html".length());
+			templates.put(name, new CompiledTemplate(
+					EmailTemplate.compile(read(html.createRelative(name + ".subject")).trim()),
+					EmailTemplate.compile(read(html)),
+					EmailTemplate.compile(read(html.createRelative(name + ".txt")))
+			));
+		}
+		log.info("Compiled email templates {}", templates.keySet());
+	}
+
+	public boolean hasTemplate(String name) {
+		return templates.containsKey(name);
+	}
+
+	public RenderedEmail render(String name, Map<String, ?> variables) {
+		CompiledTemplate template = templates.get(name);
+		if (template == null) throw new IllegalArgumentException("Unknown email template " + name);
+		Map<String, Object> values = new HashMap<>(variables);
+		values.putIfAbsent("appName", emailSenderService.getAppName());
+		values.putIfAbsent("appUrl", emailSenderService.getAppUrl());
+		return new RenderedEmail(template.subject.render(values, false), template.html.render(values, true), template.text.render(values, false));
+	}
+
+	private static String read(Resource resource) throws IOException {
+		return StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8);
+	}
+
+	@RequiredArgsConstructor
+	private static class CompiledTemplate {
+		private final EmailTemplate subject;
+		private final EmailTemplate html;
+		private final EmailTemplate text;
+	}
+}
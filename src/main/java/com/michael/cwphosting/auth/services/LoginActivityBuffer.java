@@ -0,0 +1,98 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-behind buffer for the bookkeeping done on every successful login. Logins only put the user's latest login
+ * time and address into a map, so repeated logins of one user between flushes collapse into a single entry. The map
+ * is drained periodically and on shutdown into one unordered bulk write of targeted field updates, in which
+ * {@code lastLogin} only moves forward. The failed attempt counter is not part of it: {@link LoginThrottleService}
+ * clears that at login, before another failure can count on from it.
+ */
+@Component
+@Slf4j
+public class LoginActivityBuffer {
+
+	private final MongoTemplate mongoTemplate;
+	private final ConcurrentHashMap<String, LoginActivity> pending = new ConcurrentHashMap<>();
+	private final Timer flushTimer;
+
+	public LoginActivityBuffer(MongoTemplate mongoTemplate, MeterRegistry meterRegistry) {
+		this.mongoTemplate = mongoTemplate;
+		this.flushTimer = Timer.builder("auth.login.activity.flush").register(meterRegistry);
+		Gauge.builder("auth.login.activity.pending", pending, ConcurrentHashMap::size).register(meterRegistry);
+	}
+
+	public void record(String username, String ipAddress) {
+		if (username == null) return;
+		pending.merge(username, new LoginActivity(LocalDateTime.now(), ipAddress), LoginActivity::latest);
+	}
+
+	@Scheduled(fixedDelayString = "${spring.user.login-activity.flush-interval:5000}")
+	public void flush() {
+		if (pending.isEmpty()) return;
+		List<Map.Entry<String, LoginActivity>> drained = new ArrayList<>();
+		for (String username : pending.keySet()) {
+			LoginActivity activity = pending.remove(username);
+			if (activity != null) drained.add(Map.entry(username, activity));
+		}
+		if (drained.isEmpty()) return;
+
+		BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+		for (Map.Entry<String, LoginActivity> entry : drained) {
+			LoginActivity activity = entry.getValue();
+			Update update = new Update().max("lastLogin", activity.at);
+			if (activity.ipAddress != null) update.set("lastLoginIpAddress", activity.ipAddress);
+			operations.updateOne(new Query(Criteria.where("email").is(entry.getKey())), update);
+		}
+		try {
+			flushTimer.record(operations::execute);
+		}
+		catch (BulkOperationException e) {
+			log.warn("{} login activity updates failed: {}", e.getErrors().size(), e.getMessage());
+		}
+		catch (Exception e) {
+			// keep the entries for the next flush unless a newer login replaced them meanwhile
+			drained.forEach(entry -> pending.merge(entry.getKey(), entry.getValue(), LoginActivity::latest));
+			log.warn("Unable to flush {} login activity updates: {}", drained.size(), e.getMessage());
+		}
+	}
+
+	@PreDestroy
+	public void drain() {
+		flush();
+	}
+
+	private static class LoginActivity {
+		private final LocalDateTime at;
+		private final String ipAddress;
+
+		LoginActivity(LocalDateTime at, String ipAddress) {
+			this.at = at;
+			this.ipAddress = ipAddress;
+		}
+
+		static LoginActivity latest(LoginActivity a, LoginActivity b) {
+			return b.at.isBefore(a.at) ? a : b;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package com.michael.cwphosting.auth.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.michael.cwphosting.auth.models.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Failed-login tracking per account and per source address. Each key holds a single {@link AtomicLong} packing the
+ * attempt count (high 32 bits) and the epoch second of the last failure (low 32 bits), so recording a failure is
+ * one CAS and never takes a lock. Account counters are persisted with an atomic $inc/$max instead of a
+ * read-modify-write of the user document, and an account missing from the cache is seeded from the stored counter, so
+ * failures seen before a restart or on another node still count.
+ */
+@Service
+@Slf4j
+public class LoginThrottleService implements LoginThrottleServiceInterface {
+
+	private static final int ACCOUNT_FREE_ATTEMPTS = 3;
+	private static final long SECONDS_PER_EXCESS_ATTEMPT = 5 * 60;
+
+	private final MongoTemplate mongoTemplate;
+	private final LoginActivityBuffer loginActivityBuffer;
+	private final Cache<String, AtomicLong> accounts;
+	private final Cache<String, AtomicLong> addresses;
+	private final long window;
+	private final int ipFreeAttempts;
+	private final LongSupplier clock;
+
+	@Autowired
+	public LoginThrottleService(MongoTemplate mongoTemplate, LoginActivityBuffer loginActivityBuffer, @Value("${spring.user.login-throttle.window:86400}") long window,
+								@Value("${spring.user.login-throttle.max-size:100000}") long maxSize,
+								@Value("${spring.user.login-throttle.ip-free-attempts:20}") int ipFreeAttempts) {
+		this(mongoTemplate, loginActivityBuffer, window, maxSize, ipFreeAttempts, () -> System.currentTimeMillis() / 1000);
+	}
+
+	LoginThrottleService(MongoTemplate mongoTemplate, LoginActivityBuffer loginActivityBuffer, long window, long maxSize, int ipFreeAttempts, LongSupplier clock) {
+		this.mongoTemplate = mongoTemplate;
+		this.loginActivityBuffer = loginActivityBuffer;
+		this.window = window;
+		this.ipFreeAttempts = ipFreeAttempts;
+		this.clock = clock;
+		this.accounts = Caffeine.newBuilder().expireAfterAccess(Duration.ofSeconds(window)).maximumSize(maxSize).build();
+		this.addresses = Caffeine.newBuilder().expireAfterAccess(Duration.ofSeconds(window)).maximumSize(maxSize).build();
+	}
+
+	@Override
+	public boolean isBlocked(String username, String ipAddress) {
+		return getWaitSeconds(username, ipAddress) > 0;
+	}
+
+	@Override
+	public int getWaitTime(String username, String ipAddress) {
+		long wait = getWaitSeconds(username, ipAddress);
+		if(wait > 0) log.info("Seconds to wait: {}", wait);
+		return (int) ((wait + 59) / 60);
+	}
+
+	@Override
+	public boolean recordFailure(String username, String ipAddress) {
+		long now = clock.getAsLong();
+		if(ipAddress != null) record(addresses.get(ipAddress, key -> new AtomicLong()), now);
+		if(username == null) return false;
+		AtomicLong account = account(username);
+		record(account, now);
+
+		// first failure after a quiet window: the stored count is stale, start it over. The filter only matches while
+		// the last failure is older than the window, so concurrent failures increment instead of being overwritten.
+		LocalDateTime attemptedAt = toDateTime(now);
+		Query stale = new Query(Criteria.where("email").is(username).orOperator(
+				Criteria.where("lastLoginAttempt").is(null), Criteria.where("lastLoginAttempt").lt(toDateTime(now - window))));
+		Update restart = new Update().set("loginAttempts", 1).set("lastLoginAttempt", attemptedAt);
+		if(ipAddress != null) restart.set("failedLoginIpAddress", ipAddress);
+		if(mongoTemplate.updateFirst(stale, restart, User.class).getModifiedCount() > 0) return true;
+
+		Query query = new Query(Criteria.where("email").is(username));
+		query.fields().include("loginAttempts").include("lastLoginAttempt");
+		Update update = new Update().inc("loginAttempts", 1).max("lastLoginAttempt", attemptedAt);
+		if(ipAddress != null) update.set("failedLoginIpAddress", ipAddress);
+		User previous = mongoTemplate.findAndModify(query, update, User.class);
+		if(previous == null) return false;
+		// other nodes may have seen failures this one has not
+		merge(account, previous.getLoginAttempts() + 1, now);
+		return true;
+	}
+
+	@Override
+	public void recordSuccess(String username, String ipAddress) {
+		if(username == null) return;
+		accounts.invalidate(username);
+		// cleared right away, as a failure before the next flush would otherwise count on from the stale value
+		mongoTemplate.updateFirst(new Query(Criteria.where("email").is(username).and("loginAttempts").gt(0)),
+				new Update().set("loginAttempts", 0), User.class);
+		loginActivityBuffer.record(username, ipAddress);
+	}
+
+	private long getWaitSeconds(String username, String ipAddress) {
+		long now = clock.getAsLong();
+		long wait = 0;
+		if(username != null) wait = waitSeconds(account(username), ACCOUNT_FREE_ATTEMPTS, now);
+		if(ipAddress != null) wait = Math.max(wait, waitSeconds(addresses.getIfPresent(ipAddress), ipFreeAttempts, now));
+		return wait;
+	}
+
+	private AtomicLong account(String username) {
+		return accounts.get(username, this::loadAccount);
+	}
+
+	private AtomicLong loadAccount(String username) {
+		Query query = new Query(Criteria.where("email").is(username));
+		query.fields().include("loginAttempts").include("lastLoginAttempt");
+		User stored = mongoTemplate.findOne(query, User.class);
+		if(stored == null || stored.getLoginAttempts() <= 0 || stored.getLastLoginAttempt() == null) return new AtomicLong();
+		return new AtomicLong(pack(stored.getLoginAttempts(), stored.getLastLoginAttempt().atZone(ZoneId.systemDefault()).toEpochSecond()));
+	}
+
+	private long waitSeconds(AtomicLong counter, int freeAttempts, long now) {
+		if(counter == null) return 0;
+		long state = counter.get();
+		int attempts = attempts(state);
+		long last = lastAttempt(state);
+		if(attempts <= freeAttempts || now - last > window) return 0;
+		return Math.max(0, last + (attempts - freeAttempts) * SECONDS_PER_EXCESS_ATTEMPT - now);
+	}
+
+	private void record(AtomicLong counter, long now) {
+		counter.updateAndGet(state -> {
+			int attempts = now - lastAttempt(state) > window ? 0 : attempts(state);
+			return pack(attempts + 1, now);
+		});
+	}
+
+	private void merge(AtomicLong counter, int attempts, long last) {
+		counter.updateAndGet(state -> pack(Math.max(attempts(state), attempts), Math.max(lastAttempt(state), last)));
+	}
+
+	private static long pack(int attempts, long epochSecond) {
+		return ((long) attempts << 32) | (epochSecond & 0xFFFFFFFFL);
+	}
+
+	private static int attempts(long state) {
+		return (int) (state >>> 32);
+	}
+
+	private static long lastAttempt(long state) {
+		return state & 0xFFFFFFFFL;
+	}
+
+	private static LocalDateTime toDateTime(long epochSecond) {
+		return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+	}
+}
@@ -0,0 +1,8 @@
+package com.michael.cwphosting.auth.services;
+
+public interface LoginThrottleServiceInterface {
+	boolean isBlocked(String username, String ipAddress);
+	int getWaitTime(String username, String ipAddress);
+	boolean recordFailure(String username, String ipAddress);
+	void recordSuccess(String username, String ipAddress);
+}
@@ -0,0 +1,40 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.OutboxMessage;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accepts every message without sending it, so the outbox can be exercised without an SMTP server.
+ */
+@Service
+@Profile("inmemory")
+@Slf4j
+public class NoopEmailSenderService implements EmailSenderServiceInterface {
+
+	@Getter
+	private final String appName;
+	@Getter
+	private final String appUrl;
+	private final AtomicLong sent = new AtomicLong();
+
+	public NoopEmailSenderService(@Value("${spring.application.name}") String appName, @Value("${spring.application.base-url}") String appUrl) {
+		this.appName = appName;
+		this.appUrl = appUrl;
+	}
+
+	@Override
+	public void send(OutboxMessage message) {
+		sent.incrementAndGet();
+		log.debug("Discarding email '{}' to {}", message.getSubject(), message.getTo());
+	}
+
+	public long getSent() {
+		return sent.get();
+	}
+}
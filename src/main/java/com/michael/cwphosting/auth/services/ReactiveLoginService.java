@@ -0,0 +1,93 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.exceptions.AccountSuspendedAuthenticationException;
+import com.michael.cwphosting.auth.exceptions.LoginAttemptsExeededException;
+import com.michael.cwphosting.auth.exceptions.PasswordHashingRejectedException;
+import com.michael.cwphosting.auth.exceptions.UserNotFoundAuthenticationException;
+import com.michael.cwphosting.auth.jwt.JwtUserDetails;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The login flow of {@code JwtAuthenticationFilter} without blocking the calling thread: the user is read through
+ * the reactive driver, the password is checked on the hashing pool, and the Mongo writes of the login throttle
+ * run on the bounded elastic scheduler.
+ */
+@Service
+@Profile("reactive")
+@Slf4j
+@RequiredArgsConstructor
+public class ReactiveLoginService {
+
+	private final ReactiveUserService userService;
+	private final ReactiveRefreshTokenService refreshTokenService;
+	private final LoginThrottleServiceInterface loginThrottleService;
+	private final BoundedPasswordEncoder passwordEncoder;
+	private final TokenUtil tokenUtil;
+	private final MeterRegistry meterRegistry;
+
+	public Mono<Map<String, String>> login(String username, String password, String ipAddress) {
+		Timer.Sample sample = Timer.start(meterRegistry);
+		return authenticate(username, password, ipAddress)
+				.flatMap(userDetails -> issueTokens(userDetails, ipAddress))
+				.doOnSuccess(tokens -> stop(sample, "success"))
+				.onErrorResume(AuthenticationException.class, e -> {
+					stop(sample, e.getClass().getSimpleName());
+					meterRegistry.counter("auth.login.failures", "reason", e.getClass().getSimpleName()).increment();
+					log.warn("Unable to authenticate {}, {}", username, e.getMessage());
+					if (e instanceof PasswordHashingRejectedException || username == null) return Mono.error(e);
+					return Mono.fromRunnable(() -> loginThrottleService.recordFailure(username, ipAddress))
+							.subscribeOn(Schedulers.boundedElastic())
+							.then(Mono.error(e));
+				});
+	}
+
+	private Mono<JwtUserDetails> authenticate(String username, String password, String ipAddress) {
+		if (username == null || password == null) return Mono.error(new BadCredentialsException("Bad credentials"));
+		if (loginThrottleService.isBlocked(username, ipAddress)) {
+			int minutes = loginThrottleService.getWaitTime(username, ipAddress);
+			String s = minutes == 1 ? "minute" : "minutes";
+			return Mono.error(new LoginAttemptsExeededException("Too many login attempts, you need to wait for least " + minutes + " " + s + " before you can try again."));
+		}
+		log.info("Authenticating, username: {}", username);
+		return userService.getUser(username)
+				.switchIfEmpty(Mono.error(() -> new UserNotFoundAuthenticationException("User account not found")))
+				.flatMap(user -> {
+					JwtUserDetails userDetails = userService.toUserDetails(user);
+					if (!userDetails.isEnabled()) return Mono.error(new AccountSuspendedAuthenticationException("Unable to login. Account is suspended"));
+					userDetails.setActivationGracePeriod(tokenUtil.getAccountActivationExpire());
+					if (!userDetails.isAccountNonExpired()) return Mono.error(new AccountSuspendedAuthenticationException("Unable to login. You need to activate your account first."));
+					return Mono.defer(() -> Mono.fromFuture(passwordEncoder.matchesAsync(password, user.getPassword())))
+							.flatMap(matches -> matches ? Mono.just(userDetails) : Mono.error(new BadCredentialsException("Bad credentials")));
+				});
+	}
+
+	private Mono<Map<String, String>> issueTokens(JwtUserDetails userDetails, String ipAddress) {
+		String accessToken = tokenUtil.generateToken(userDetails, false);
+		String refreshToken = tokenUtil.generateToken(userDetails, true);
+		String username = userDetails.getUsername();
+		Map<String, String> tokens = new HashMap<>();
+		tokens.put("accessToken", accessToken);
+		tokens.put("refreshToken", refreshToken);
+		return refreshTokenService.saveRefreshToken(username, refreshToken)
+				.doOnSuccess(saved -> loginThrottleService.recordSuccess(username, ipAddress))
+				.thenReturn(tokens);
+	}
+
+	private void stop(Timer.Sample sample, String outcome) {
+		sample.stop(Timer.builder("auth.login.attempt").tag("outcome", outcome).register(meterRegistry));
+	}
+}
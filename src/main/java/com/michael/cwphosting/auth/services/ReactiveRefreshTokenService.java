@@ -0,0 +1,57 @@
+package com.michael.cwphosting.auth.services;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.michael.cwphosting.auth.exceptions.InvalidTokenException;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.models.RefreshToken;
+import com.michael.cwphosting.auth.repository.ReactiveRefreshTokenRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+/**
+ * Reactive counterpart of {@link RefreshTokenService}, storing and checking refresh tokens through the reactive
+ * Mongo driver.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveRefreshTokenService {
+
+	private final TokenUtil tokenUtil;
+	private final ReactiveRefreshTokenRepository repository;
+	private final ReactiveUserDetailsService userDetailsService;
+
+	public Mono<RefreshToken> saveRefreshToken(String username, String token) {
+		return Mono.fromCallable(() -> tokenUtil.getDecodedToken(token))
+				.flatMap(decoded -> repository.save(RefreshToken.forToken(username, token, decoded.getIssuedAt(), decoded.getExpiresAt())));
+	}
+
+	public Mono<Boolean> revokeRefreshToken(String token) {
+		return repository.deleteRefreshTokenById(RefreshToken.digest(token)).map(deleted -> deleted > 0);
+	}
+
+	public Mono<Boolean> revokeAllTokens(String username) {
+		return repository.deleteRefreshTokensByUsername(username).map(deleted -> deleted > 0);
+	}
+
+	public Mono<Boolean> validateRefreshToken(String username, String token) {
+		return repository.findById(RefreshToken.digest(token))
+				.map(refreshToken -> refreshToken.getExpires().after(new Date()) && refreshToken.getUsername().equals(username))
+				.defaultIfEmpty(false);
+	}
+
+	public Mono<String> refreshToken(String token) {
+		return Mono.fromCallable(() -> tokenUtil.getDecodedToken(token))
+				.map(DecodedJWT::getSubject)
+				.flatMap(username -> validateRefreshToken(username, token)
+						.filter(valid -> valid)
+						.switchIfEmpty(Mono.error(() -> new InvalidTokenException("Could not generate new token. Your refresh token was not accepted")))
+						.then(userDetailsService.findByUsername(username)))
+				.map(tokenUtil::generateToken);
+	}
+}
@@ -0,0 +1,38 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.jwt.JwtUserDetails;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.repository.ReactiveUserRepository;
+import com.michael.cwphosting.auth.security.PermissionRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveUserService implements ReactiveUserDetailsService {
+
+	private final ReactiveUserRepository userRepository;
+	private final PermissionRegistry permissionRegistry;
+
+	public Mono<User> getUser(String username) {
+		if (username == null) return Mono.empty();
+		return userRepository.findUserByEmail(username);
+	}
+
+	@Override
+	public Mono<UserDetails> findByUsername(String username) {
+		return getUser(username)
+				.switchIfEmpty(Mono.error(() -> new UsernameNotFoundException("User not found")))
+				.map(this::toUserDetails);
+	}
+
+	public JwtUserDetails toUserDetails(User user) {
+		return new JwtUserDetails(user, permissionRegistry.authoritiesOf(user.getRoles()));
+	}
+}
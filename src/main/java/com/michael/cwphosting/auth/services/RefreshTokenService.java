@@ -7,11 +7,14 @@ import com.michael.cwphosting.auth.models.RefreshToken;
 import com.michael.cwphosting.auth.repository.RefreshTokenRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 
-import java.sql.Ref;
+import javax.annotation.PostConstruct;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -24,12 +27,33 @@ public class RefreshTokenService implements RefreshTokenServiceInterface{
 	private final TokenUtil tokenUtil;
 	private final RefreshTokenRepository repository;
 	private final UserDetailsService userDetailsService;
+	private final MongoTemplate mongoTemplate;
+
+	/**
+	 * Tokens used to be stored in clear under a unique index on {@code token}. New documents no longer have that
+	 * field, so the old index would reject every insert after the first one.
+	 */
+	@PostConstruct
+	public void dropLegacyTokenIndex() {
+		try {
+			IndexOperations indexes = mongoTemplate.indexOps(RefreshToken.class);
+			for (IndexInfo index : indexes.getIndexInfo()) {
+				if (index.isIndexForFields(List.of("token"))) {
+					indexes.dropIndex(index.getName());
+					log.info("Dropped legacy refresh token index {}", index.getName());
+				}
+			}
+		}
+		catch (Exception e) {
+			log.warn("Unable to check refresh token indexes: {}", e.getMessage());
+		}
+	}
 
 	@Override
 	public boolean saveRefreshToken(String username, String token) {
 		try {
 			DecodedJWT decodedJWT = tokenUtil.getDecodedToken(token);
-			RefreshToken refreshToken = new RefreshToken(username, token, decodedJWT.getIssuedAt(), decodedJWT.getExpiresAt() );
+			RefreshToken refreshToken = RefreshToken.forToken(username, token, decodedJWT.getIssuedAt(), decodedJWT.getExpiresAt() );
 			repository.save(refreshToken);
 			return true;
 		}
@@ -41,29 +65,17 @@ public class RefreshTokenService implements RefreshTokenServiceInterface{
 
 	@Override
 	public boolean revokeRefreshToken(String token) {
-		Optional<RefreshToken> refreshToken = repository.findRefreshTokenByToken(token);
-		if(refreshToken.isPresent()){
-			repository.delete(refreshToken.get());
-			return true;
-		}
-		return false;
+		return repository.deleteRefreshTokenById(RefreshToken.digest(token)) > 0;
 	}
 
 	@Override
 	public boolean revokeAllTokens(String username) {
-		List<RefreshToken> tokens = repository.findRefreshTokensByUsername(username);
-		if(!tokens.isEmpty()){
-			for(RefreshToken token: tokens){
-				repository.delete(token);
-			}
-			return true;
-		}
-		return false;
+		return repository.deleteRefreshTokensByUsername(username) > 0;
 	}
 
 	@Override
 	public boolean validateRefreshToken(String username, String token) {
-		Optional<RefreshToken> refreshToken = repository.findRefreshTokenByToken(token);
+		Optional<RefreshToken> refreshToken = repository.findById(RefreshToken.digest(token));
 		return refreshToken.isPresent() && refreshToken.get().getExpires().after(new Date()) && refreshToken.get().getUsername().equals(username);
 	}
 
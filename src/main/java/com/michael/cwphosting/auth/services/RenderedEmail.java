@@ -0,0 +1,12 @@
+package com.michael.cwphosting.auth.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class RenderedEmail {
+	private final String subject;
+	private final String htmlBody;
+	private final String textBody;
+}
@@ -0,0 +1,155 @@
+package com.michael.cwphosting.auth.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps up to {@code maxSize} authenticated SMTP connections open so consecutive messages share a session instead
+ * of paying the connect, TLS and AUTH handshake every time. Connections that sat idle are checked with a NOOP before
+ * reuse, and a send that fails on a reused connection is retried once on a fresh one.
+ */
+@Slf4j
+class SmtpTransportPool implements AutoCloseable {
+
+	private static final long VALIDATE_AFTER_MILLIS = 2000;
+
+	private final Session session;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+	private final AtomicLong opened = new AtomicLong();
+
+	SmtpTransportPool(Session session, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
+		this.session = session;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.permits = new Semaphore(maxSize);
+	}
+
+	void send(MimeMessage message) throws MessagingException {
+		message.saveChanges();
+		acquire();
+		try {
+			PooledTransport transport = take();
+			try {
+				transport.send(message);
+				idle.offerFirst(transport.touch());
+			}
+			catch (SendFailedException e) {
+				// recipients were rejected, the connection itself is fine
+				idle.offerFirst(transport.touch());
+				throw e;
+			}
+			catch (MessagingException e) {
+				transport.close();
+				if (transport.fresh) throw e;
+				log.info("Pooled SMTP connection failed ({}), retrying on a new one", e.getMessage());
+				PooledTransport replacement = open();
+				try {
+					replacement.send(message);
+				}
+				catch (MessagingException retryFailure) {
+					replacement.close();
+					throw retryFailure;
+				}
+				idle.offerFirst(replacement.touch());
+			}
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	void evictIdle() {
+		long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+		Iterator<PooledTransport> iterator = idle.descendingIterator();
+		while (iterator.hasNext()) {
+			PooledTransport transport = iterator.next();
+			if (transport.lastUsed < cutoff && idle.remove(transport)) transport.close();
+		}
+	}
+
+	long getConnectionsOpened() {
+		return opened.get();
+	}
+
+	int getIdleCount() {
+		return idle.size();
+	}
+
+	@Override
+	public void close() {
+		PooledTransport transport;
+		while ((transport = idle.pollFirst()) != null) transport.close();
+	}
+
+	private void acquire() throws MessagingException {
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new MessagingException("Timed out waiting for an SMTP connection");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted waiting for an SMTP connection", e);
+		}
+	}
+
+	private PooledTransport take() throws MessagingException {
+		PooledTransport transport;
+		while ((transport = idle.pollFirst()) != null) {
+			if (System.currentTimeMillis() - transport.lastUsed < VALIDATE_AFTER_MILLIS || transport.transport.isConnected()) {
+				return transport;
+			}
+			transport.close();
+		}
+		return open();
+	}
+
+	private PooledTransport open() throws MessagingException {
+		Transport transport = session.getTransport();
+		transport.connect();
+		opened.incrementAndGet();
+		return new PooledTransport(transport);
+	}
+
+	private static class PooledTransport {
+		private final Transport transport;
+		private boolean fresh = true;
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		PooledTransport(Transport transport) {
+			this.transport = transport;
+		}
+
+		void send(MimeMessage message) throws MessagingException {
+			transport.sendMessage(message, message.getAllRecipients());
+		}
+
+		PooledTransport touch() {
+			fresh = false;
+			lastUsed = System.currentTimeMillis();
+			return this;
+		}
+
+		void close() {
+			try {
+				transport.close();
+			}
+			catch (MessagingException e) {
+				log.debug("Error closing SMTP connection: {}", e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.michael.cwphosting.auth.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through near cache in front of {@link UserRepository#findUserByEmail(String)}. Concurrent misses for the
+ * same email share a single Mongo read, and callers always receive their own copy of the cached document.
+ */
+@Component
+public class UserCache {
+
+	private final UserRepository userRepository;
+	private final Cache<String, Optional<User>> cache;
+
+	public UserCache(UserRepository userRepository, MeterRegistry meterRegistry,
+					 @Value("${spring.user.cache.ttl:30}") long ttl, @Value("${spring.user.cache.max-size:10000}") long maxSize) {
+		this.userRepository = userRepository;
+		this.cache = Caffeine.newBuilder()
+				.expireAfterWrite(Duration.ofSeconds(ttl))
+				.maximumSize(maxSize)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "users.near-cache");
+	}
+
+	public Optional<User> findUserByEmail(String email) {
+		if (email == null) return Optional.empty();
+		return cache.get(email, userRepository::findUserByEmail).map(User::copy);
+	}
+
+	public void invalidate(String email) {
+		if (email != null) cache.invalidate(email);
+	}
+}
@@ -0,0 +1,350 @@
+package com.michael.cwphosting.auth.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.michael.cwphosting.auth.jwt.resource.UserImportReport;
+import com.michael.cwphosting.auth.jwt.resource.UserImportRow;
+import com.michael.cwphosting.auth.models.Address;
+import com.michael.cwphosting.auth.models.Role;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.security.BoundedPasswordEncoder;
+import com.michael.cwphosting.auth.utilities.CsvReader;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.Collectors;
+
+/**
+ * Creates accounts from a CSV or NDJSON upload without holding the upload in memory. Rows are validated as they are
+ * read and handled one batch at a time: existing accounts are found with a single {@code $in} query, passwords are
+ * hashed in parallel on the import's own fork-join pool (so an import cannot starve logins on the shared hashing pool),
+ * the batch is written with one unordered bulk insert so a failing row does not stop the others, and the activation
+ * emails of the batch go into the outbox with one insert.
+ */
+@Service
+@Slf4j
+public class UserImportService implements UserImportServiceInterface {
+
+	private static final int DUPLICATE_KEY = 11000;
+
+	private final MongoTemplate mongoTemplate;
+	private final UserService userService;
+	private final UserCache userCache;
+	private final EmailOutboxServiceInterface emailOutboxService;
+	private final PasswordEncoder hashingEncoder;
+	private final ObjectMapper objectMapper;
+	private final ObjectReader rowReader;
+	private final ForkJoinPool hashingPool;
+	private final int batchSize;
+	private final Map<UserImportReport.Status, Counter> rowCounters = new EnumMap<>(UserImportReport.Status.class);
+
+	@Value("${spring.user.suspend-by-default}")
+	private boolean suspendByDefault;
+
+	public UserImportService(MongoTemplate mongoTemplate, UserService userService, UserCache userCache,
+							 EmailOutboxServiceInterface emailOutboxService, BoundedPasswordEncoder passwordEncoder,
+							 ObjectMapper objectMapper, MeterRegistry meterRegistry,
+							 @Value("${spring.user.import.batch-size:500}") int batchSize,
+							 @Value("${spring.user.import.hashing-parallelism:0}") int parallelism) {
+		this.mongoTemplate = mongoTemplate;
+		this.userService = userService;
+		this.userCache = userCache;
+		this.emailOutboxService = emailOutboxService;
+		this.hashingEncoder = passwordEncoder.getDelegate();
+		this.objectMapper = objectMapper;
+		this.rowReader = objectMapper.readerFor(UserImportRow.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		this.batchSize = Math.max(1, batchSize);
+		// by default hash on a quarter of the cores, leaving the rest to logins and sign-ups
+		if (parallelism <= 0) parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+		this.hashingPool = new ForkJoinPool(parallelism, pool -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("user-import-" + thread.getPoolIndex());
+			return thread;
+		}, null, false);
+		for (UserImportReport.Status status : UserImportReport.Status.values()) {
+			rowCounters.put(status, meterRegistry.counter("user.import.rows", "result", status.name().toLowerCase()));
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		hashingPool.shutdownNow();
+	}
+
+	@Override
+	public UserImportReport importUsers(InputStream in, Format format) throws IOException {
+		UserImportReport report = new UserImportReport();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		RowSource rows = format == Format.CSV ? csvRows(reader) : ndjsonRows(reader);
+		Set<String> seen = new HashSet<>();
+		List<Pending> batch = new ArrayList<>(batchSize);
+		Pending pending;
+		while ((pending = rows.next()) != null) {
+			validate(pending, seen);
+			batch.add(pending);
+			if (batch.size() == batchSize) {
+				process(batch, report);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) process(batch, report);
+		log.info("Imported users: {} created, {} duplicates, {} invalid, {} failed",
+				report.getCreated(), report.getDuplicates(), report.getInvalid(), report.getFailed());
+		return report;
+	}
+
+	private void validate(Pending pending, Set<String> seen) {
+		if (pending.result.getStatus() != null) return;
+		String email = pending.row.getEmail();
+		if (!userService.isValidEmail(email)) {
+			pending.fail(UserImportReport.Status.INVALID, "The submitted email address is not valid");
+		}
+		else if (!userService.isValidPassword(pending.row.getPassword())) {
+			pending.fail(UserImportReport.Status.INVALID, userService.getPasswordValidationMessage());
+		}
+		else if (!seen.add(email)) {
+			pending.fail(UserImportReport.Status.DUPLICATE, "Email appears earlier in this import");
+		}
+	}
+
+	private void process(List<Pending> batch, UserImportReport report) {
+		List<Pending> candidates = open(batch);
+		if (!candidates.isEmpty()) {
+			Set<String> existing = existingEmails(candidates.stream().map(p -> p.row.getEmail()).collect(Collectors.toList()));
+			for (Pending pending : candidates) {
+				if (existing.contains(pending.row.getEmail())) {
+					pending.fail(UserImportReport.Status.DUPLICATE, "User with given email already exists");
+				}
+			}
+			hash(open(batch));
+			insert(open(batch));
+			queueActivationMails(batch);
+		}
+		for (Pending pending : batch) {
+			report.add(pending.result);
+			rowCounters.get(pending.result.getStatus()).increment();
+		}
+	}
+
+	private Set<String> existingEmails(List<String> emails) {
+		Query query = new Query(Criteria.where("email").in(emails));
+		query.fields().include("email");
+		return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(User.class)).stream()
+				.map(document -> document.getString("email"))
+				.collect(Collectors.toSet());
+	}
+
+	private void hash(List<Pending> batch) {
+		try {
+			hashingPool.submit(() -> batch.parallelStream().forEach(pending -> {
+				try {
+					pending.user = newUser(pending.row, hashingEncoder.encode(pending.row.getPassword()));
+					pending.activationToken = userService.assignActivationToken(pending.user);
+				}
+				catch (RuntimeException e) {
+					pending.fail(UserImportReport.Status.FAILED, e.getMessage());
+				}
+			})).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while hashing imported passwords", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void insert(List<Pending> batch) {
+		if (batch.isEmpty()) return;
+		BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+		operations.insert(batch.stream().map(pending -> pending.user).collect(Collectors.toList()));
+		Map<Integer, BulkWriteError> errors = new HashMap<>();
+		try {
+			operations.execute();
+		}
+		catch (BulkOperationException e) {
+			e.getErrors().forEach(error -> errors.put(error.getIndex(), error));
+		}
+		catch (DataAccessException e) {
+			batch.forEach(pending -> pending.fail(UserImportReport.Status.FAILED, e.getMessage()));
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			Pending pending = batch.get(i);
+			BulkWriteError error = errors.get(i);
+			if (error == null) {
+				pending.result.setResult(UserImportReport.Status.CREATED, null);
+				userCache.invalidate(pending.user.getEmail());
+			}
+			else if (error.getCode() == DUPLICATE_KEY) {
+				pending.fail(UserImportReport.Status.DUPLICATE, "User with given email already exists");
+			}
+			else {
+				pending.fail(UserImportReport.Status.FAILED, error.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Queues the activation mails of the created rows. Rows only need an email and a password, so the greeting falls
+	 * back to the email's local part. A created row whose mail could not be queued says so in its message, as the
+	 * account will be removed unless the user asks for a new activation mail.
+	 */
+	private void queueActivationMails(List<Pending> batch) {
+		Map<String, Map<String, ?>> mails = new LinkedHashMap<>();
+		for (Pending pending : batch) {
+			if (pending.result.getStatus() != UserImportReport.Status.CREATED) continue;
+			User user = pending.user;
+			mails.put(user.getEmail(), userService.confirmationMailVariables(pending.activationToken, greetingName(user)));
+		}
+		if (mails.isEmpty()) return;
+		Set<String> queued = new HashSet<>();
+		try {
+			emailOutboxService.enqueueAll("confirm-account", mails).forEach(message -> queued.add(message.getTo()));
+		}
+		catch (Exception e) {
+			log.warn("Unable to queue {} activation emails: {}", mails.size(), e.getMessage());
+		}
+		for (Pending pending : batch) {
+			if (pending.result.getStatus() == UserImportReport.Status.CREATED && !queued.contains(pending.user.getEmail())) {
+				pending.result.setResult(UserImportReport.Status.CREATED, "The activation email could not be queued");
+			}
+		}
+	}
+
+	private static String greetingName(User user) {
+		if (user.getFirstName() != null && !user.getFirstName().isBlank()) return user.getFirstName();
+		return user.getEmail().substring(0, user.getEmail().indexOf('@'));
+	}
+
+	private User newUser(UserImportRow row, String encodedPassword) {
+		User user = new User();
+		user.setFirstName(row.getFirstName());
+		user.setLastName(row.getLastName());
+		user.setEmail(row.getEmail());
+		user.setPhoneNumber(row.getPhoneNumber());
+		if (row.getCountry() != null || row.getCity() != null || row.getAddressLine1() != null) {
+			user.setAddress(new Address(row.getCountry(), row.getCity(), row.getAddressLine1(), row.getAddressLine2(), row.getPostCode()));
+		}
+		user.setPassword(encodedPassword);
+		user.setSuspended(suspendByDefault);
+		user.setCreated(LocalDateTime.now());
+		List<Role> roles = new ArrayList<>();
+		roles.add(new Role("USER"));
+		user.setRoles(roles);
+		return user;
+	}
+
+	private static List<Pending> open(List<Pending> batch) {
+		return batch.stream().filter(pending -> pending.result.getStatus() == null).collect(Collectors.toList());
+	}
+
+	private RowSource csvRows(BufferedReader reader) throws IOException {
+		CsvReader csv = new CsvReader(reader);
+		List<String> header = csv.next();
+		if (header == null) return () -> null;
+		List<String> columns = header.stream().map(String::trim).collect(Collectors.toList());
+		if (!columns.contains("email") || !columns.contains("password")) {
+			throw new IllegalArgumentException("The CSV header must name the email and password columns");
+		}
+		int[] number = {0};
+		return () -> {
+			List<String> record = csv.next();
+			if (record == null) return null;
+			number[0]++;
+			if (record.size() != columns.size()) {
+				return Pending.invalid(number[0], "Expected " + columns.size() + " fields but found " + record.size());
+			}
+			Map<String, String> fields = new HashMap<>();
+			for (int i = 0; i < columns.size(); i++) {
+				String value = record.get(i).trim();
+				if (!value.isEmpty()) fields.put(columns.get(i), value);
+			}
+			return Pending.of(number[0], objectMapper.convertValue(fields, UserImportRow.class));
+		};
+	}
+
+	private RowSource ndjsonRows(BufferedReader reader) {
+		int[] number = {0};
+		return () -> {
+			String line;
+			do {
+				line = reader.readLine();
+				if (line == null) return null;
+			} while (line.isBlank());
+			number[0]++;
+			try {
+				UserImportRow row = rowReader.readValue(line);
+				if (row != null) return Pending.of(number[0], row);
+			}
+			catch (JsonProcessingException e) {
+				// reported below
+			}
+			return Pending.invalid(number[0], "The line is not a valid JSON object");
+		};
+	}
+
+	private interface RowSource {
+		Pending next() throws IOException;
+	}
+
+	private static class Pending {
+		private final UserImportReport.Row result;
+		private final UserImportRow row;
+		private User user;
+		private String activationToken;
+
+		private Pending(UserImportReport.Row result, UserImportRow row) {
+			this.result = result;
+			this.row = row;
+		}
+
+		static Pending of(int number, UserImportRow row) {
+			if (row.getEmail() != null) row.setEmail(row.getEmail().trim());
+			return new Pending(new UserImportReport.Row(number, row.getEmail()), row);
+		}
+
+		static Pending invalid(int number, String message) {
+			Pending pending = new Pending(new UserImportReport.Row(number, null), new UserImportRow());
+			pending.fail(UserImportReport.Status.INVALID, message);
+			return pending;
+		}
+
+		void fail(UserImportReport.Status status, String message) {
+			result.setResult(status, message);
+		}
+	}
+}
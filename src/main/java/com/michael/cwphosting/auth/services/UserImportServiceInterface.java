@@ -0,0 +1,12 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.jwt.resource.UserImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface UserImportServiceInterface {
+	enum Format { CSV, NDJSON }
+
+	UserImportReport importUsers(InputStream in, Format format) throws IOException;
+}
@@ -0,0 +1,222 @@
+package com.michael.cwphosting.auth.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.michael.cwphosting.auth.jwt.resource.UserListRequest;
+import com.michael.cwphosting.auth.jwt.resource.UserPageResponse;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.models.UserSummary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pages through the users collection by keyset instead of offset: the cursor carries the sort key of the last
+ * returned user, so every page is an index range scan of {@code limit + 1} documents regardless of its position.
+ * Under {@code sort=created}, users without a creation date sort first, as Mongo orders null before any date.
+ */
+@Service
+public class UserListingService implements UserListingServiceInterface {
+
+	public static final Set<String> SELECTABLE_FIELDS = Set.of("id", "firstName", "lastName", "email", "phoneNumber",
+			"address", "created", "lastLogin", "suspended", "roles");
+
+	private static final String SORT_ID = "id";
+	private static final String SORT_CREATED = "created";
+	private static final String NULL_CREATED = "null";
+
+	private final MongoTemplate mongoTemplate;
+	private final ObjectMapper objectMapper;
+	private final int defaultLimit;
+	private final int maxLimit;
+	private final int exportBatchSize;
+
+	public UserListingService(MongoTemplate mongoTemplate, ObjectMapper objectMapper,
+							  @Value("${spring.user.listing.default-limit:50}") int defaultLimit,
+							  @Value("${spring.user.listing.max-limit:200}") int maxLimit,
+							  @Value("${spring.user.export.batch-size:1000}") int exportBatchSize) {
+		this.mongoTemplate = mongoTemplate;
+		this.objectMapper = objectMapper;
+		this.defaultLimit = defaultLimit;
+		this.maxLimit = maxLimit;
+		this.exportBatchSize = exportBatchSize;
+	}
+
+	@Override
+	public UserPageResponse listUsers(UserListRequest request) {
+		List<UserSummary> users = mongoTemplate.find(pageQuery(request), UserSummary.class, mongoTemplate.getCollectionName(User.class));
+		return toPage(request, users);
+	}
+
+	/**
+	 * The query for one page: filters, keyset position, sort and projection, limited to one more user than the
+	 * page holds so {@link #toPage} can tell whether there is a next page.
+	 */
+	@Override
+	public Query pageQuery(UserListRequest request) {
+		String sort = resolveSort(request);
+		Query query = filterQuery(request);
+		if (request.getCursor() != null && !request.getCursor().isBlank()) {
+			query.addCriteria(afterCursor(sort, request.getCursor()));
+		}
+		query.with(SORT_CREATED.equals(sort) ? Sort.by("created", "_id") : Sort.by("_id"));
+		query.limit(resolveLimit(request) + 1);
+		project(query, request.getFields());
+		if (SORT_CREATED.equals(sort)) query.fields().include("created");
+		return query;
+	}
+
+	@Override
+	public UserPageResponse toPage(UserListRequest request, List<UserSummary> users) {
+		int limit = resolveLimit(request);
+		String nextCursor = null;
+		if (users.size() > limit) {
+			users = new ArrayList<>(users.subList(0, limit));
+			nextCursor = encodeCursor(resolveSort(request), users.get(limit - 1));
+		}
+		return new UserPageResponse(users, nextCursor);
+	}
+
+	@Override
+	public Query exportQuery(UserListRequest request) {
+		Query query = filterQuery(request);
+		project(query, request.getFields());
+		query.with(Sort.by("_id")).cursorBatchSize(exportBatchSize);
+		return query;
+	}
+
+	/**
+	 * Writes every matching user as one JSON document per line. Users are pulled from a server-side cursor one
+	 * batch at a time and the output is flushed after each batch, so memory use does not depend on the number of
+	 * users exported.
+	 */
+	@Override
+	public long exportUsers(UserListRequest request, OutputStream out) throws IOException {
+		Query query = exportQuery(request);
+
+		long count = 0;
+		// the writer would otherwise flush after every user, and each flush is also a deflate sync flush when gzipped
+		ObjectWriter writer = objectMapper.writerFor(UserSummary.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		generator.setRootValueSeparator(null);
+		try (CloseableIterator<UserSummary> users = mongoTemplate.stream(query, UserSummary.class, mongoTemplate.getCollectionName(User.class))) {
+			while (users.hasNext()) {
+				writer.writeValue(generator, users.next());
+				generator.writeRaw('\n');
+				if (++count % exportBatchSize == 0) generator.flush();
+			}
+		}
+		finally {
+			generator.close();
+		}
+		return count;
+	}
+
+	@Override
+	public void validateFields(List<String> fields) {
+		if (fields == null) return;
+		for (String field : fields) {
+			if (!SELECTABLE_FIELDS.contains(field)) throw new IllegalArgumentException("Unknown field: " + field);
+		}
+	}
+
+	/**
+	 * Builds the filter part of a listing query. Every filter is backed by one of the compound indexes on
+	 * {@link User}, for either sort; combining the role and suspended filters uses only one of them.
+	 */
+	private Query filterQuery(UserListRequest request) {
+		Query query = new Query();
+		if (request.getRole() != null) query.addCriteria(Criteria.where("roles.name").is(request.getRole()));
+		if (request.getSuspended() != null) query.addCriteria(Criteria.where("suspended").is(request.getSuspended()));
+		if (request.getCreatedFrom() != null || request.getCreatedTo() != null) {
+			Criteria created = Criteria.where("created");
+			if (request.getCreatedFrom() != null) created.gte(request.getCreatedFrom());
+			if (request.getCreatedTo() != null) created.lt(request.getCreatedTo());
+			query.addCriteria(created);
+		}
+		return query;
+	}
+
+	/**
+	 * Restricts the query to the requested fields, or to all {@link #SELECTABLE_FIELDS} when none were given.
+	 */
+	private void project(Query query, List<String> fields) {
+		validateFields(fields);
+		if (fields == null || fields.isEmpty()) fields = List.copyOf(SELECTABLE_FIELDS);
+		for (String field : fields) {
+			if (!SORT_ID.equals(field)) query.fields().include(field);
+		}
+	}
+
+	private int resolveLimit(UserListRequest request) {
+		return request.getLimit() == null ? defaultLimit : Math.min(Math.max(request.getLimit(), 1), maxLimit);
+	}
+
+	private String resolveSort(UserListRequest request) {
+		String sort = request.getSort();
+		if (sort == null) {
+			// a created range is only served by the {created, _id} index when we also sort on created
+			return request.getCreatedFrom() != null || request.getCreatedTo() != null ? SORT_CREATED : SORT_ID;
+		}
+		if (!SORT_ID.equals(sort) && !SORT_CREATED.equals(sort)) {
+			throw new IllegalArgumentException("Unsupported sort: " + sort);
+		}
+		return sort;
+	}
+
+	private Criteria afterCursor(String sort, String cursor) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+		String[] parts = decoded.split(":");
+		try {
+			if (SORT_CREATED.equals(sort) && parts.length == 3 && SORT_CREATED.equals(parts[0])) {
+				ObjectId id = new ObjectId(parts[2]);
+				if (NULL_CREATED.equals(parts[1])) {
+					return new Criteria().orOperator(Criteria.where("created").ne(null),
+							Criteria.where("created").is(null).and("_id").gt(id));
+				}
+				LocalDateTime created = LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(parts[1])), ZoneOffset.UTC);
+				return new Criteria().orOperator(Criteria.where("created").gt(created),
+						Criteria.where("created").is(created).and("_id").gt(id));
+			}
+			if (SORT_ID.equals(sort) && parts.length == 2 && SORT_ID.equals(parts[0])) {
+				return Criteria.where("_id").gt(new ObjectId(parts[1]));
+			}
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+		throw new IllegalArgumentException("Cursor does not match sort " + sort);
+	}
+
+	private String encodeCursor(String sort, UserSummary last) {
+		String value = SORT_CREATED.equals(sort)
+				? SORT_CREATED + ":" + (last.getCreated() == null ? NULL_CREATED : last.getCreated().toInstant(ZoneOffset.UTC).toEpochMilli()) + ":" + last.getId()
+				: SORT_ID + ":" + last.getId();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,19 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.jwt.resource.UserListRequest;
+import com.michael.cwphosting.auth.jwt.resource.UserPageResponse;
+import com.michael.cwphosting.auth.models.UserSummary;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+public interface UserListingServiceInterface {
+	UserPageResponse listUsers(UserListRequest request);
+	Query pageQuery(UserListRequest request);
+	UserPageResponse toPage(UserListRequest request, List<UserSummary> users);
+	Query exportQuery(UserListRequest request);
+	long exportUsers(UserListRequest request, OutputStream out) throws IOException;
+	void validateFields(List<String> fields);
+}
@@ -3,17 +3,27 @@ package com.michael.cwphosting.auth.services;
 import com.michael.cwphosting.auth.exceptions.InvalidEmailException;
 import com.michael.cwphosting.auth.exceptions.InvalidPasswordException;
 import com.michael.cwphosting.auth.exceptions.UserAlreadyExistAuthenticationException;
+import com.michael.cwphosting.auth.jwt.JwtUserDetails;
 import com.michael.cwphosting.auth.models.Role;
 import com.michael.cwphosting.auth.models.User;
 import com.michael.cwphosting.auth.repository.RoleRepository;
 import com.michael.cwphosting.auth.repository.UserRepository;
+import com.michael.cwphosting.auth.security.PermissionRegistry;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.validator.routines.EmailValidator;
-import org.jsoup.Jsoup;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.bson.Document;
+import org.springframework.beans.BeanUtils;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -21,20 +31,32 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class UserService implements UserDetailsService, UserServiceInterface {
 
+	private static final Set<String> MANAGED_FIELDS = Set.of("_id", "_class", "version", "securityVersion", "securityVersionChanged",
+			"loginAttempts", "lastLoginAttempt", "failedLoginIpAddress", "lastLogin", "lastLoginIpAddress", "activationExpires");
+
 	private final UserRepository userRepository;
 	private final RoleRepository roleRepository;
 	private final PasswordEncoder passwordEncoder;
-	private EmailSenderService emailSenderService;
+	private final SecurityVersionRegistry securityVersionRegistry;
+	private final PermissionRegistry permissionRegistry;
+	private final UserCache userCache;
+	private final LoginThrottleService loginThrottleService;
+	private final EmailOutboxService emailOutboxService;
+	private final MongoTemplate mongoTemplate;
+	private EmailSenderServiceInterface emailSenderService;
 
 	@Value("${spring.user.password.validation-message}")
 	private String passwordValidationMessage;
@@ -45,11 +67,14 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 	@Value("${spring.user.forgotten-password.expire}")
 	private Long forgottenPasswordExpire;
 
-	@Value("${spring.mail.from}")
-	private String emailFrom;
+	@Value("${jwt.account.activation.expire}")
+	private Long accountActivationExpire;
+
+	@Value("${spring.user.update.max-attempts:5}")
+	private int maxUpdateAttempts;
 
 	@Autowired
-	public void setEmailSenderService(EmailSenderService emailSenderService) {
+	public void setEmailSenderService(EmailSenderServiceInterface emailSenderService) {
 		this.emailSenderService = emailSenderService;
 	}
 
@@ -63,18 +88,14 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 
 	@Override
 	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-		Optional<User> opUser = userRepository.findUserByEmail(username);
+		Optional<User> opUser = userCache.findUserByEmail(username);
 		if(opUser.isEmpty()){
 			log.warn("User with username \"{}\" not found.", username);
 			throw new UsernameNotFoundException("User not found");
 		}
 		else{
 			User user = opUser.get();
-			Collection<SimpleGrantedAuthority> authorities = new ArrayList<>();
-			user.getRoles().forEach(role -> {
-				authorities.add(new SimpleGrantedAuthority(role.getName()));
-			});
-			return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), authorities);
+			return new JwtUserDetails(user, permissionRegistry.authoritiesOf(user.getRoles()));
 		}
 	}
 
@@ -87,28 +108,107 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 	public User saveUser(User user) {
 		log.info("Saving new user {}", user.getUsername());
 		user.setPassword( passwordEncoder.encode(user.getPassword()) );
-		return userRepository.save(user);
+		User saved = userRepository.save(user);
+		userCache.invalidate(saved.getEmail());
+		return saved;
 	}
 
+	/**
+	 * Replaces the editable fields of the stored user with those of {@code user}. Fields maintained by their own
+	 * targeted updates (login bookkeeping, security version) are never taken from {@code user}, so a stale copy
+	 * cannot roll them back. Prefer {@link #updateUser(String, Consumer)}, which only writes what it changes.
+	 */
 	@Override
 	public User updateUser(User user) {
-		log.info("Updating user {}", user.getUsername());
-		User currentUser = getUser(user.getUsername());
-		if(currentUser != null && user.getUsername().equals(currentUser.getUsername()) && !user.getPassword().equals(currentUser.getPassword()) ){
-			log.info("Password for {} has been updated", user.getUsername());
-			user.setPassword( passwordEncoder.encode(user.getPassword()) );
+		return updateUser(user.getEmail(), current -> BeanUtils.copyProperties(user, current, "id", "version"));
+	}
+
+	/**
+	 * Applies {@code change} to a fresh copy of the user and writes only the fields it changed, as $set/$unset
+	 * guarded by the version the copy was read at. When another update gets in between, the copy is re-read and
+	 * {@code change} applied again, up to {@code spring.user.update.max-attempts} times.
+	 */
+	@Override
+	public User updateUser(String username, Consumer<User> change) {
+		log.info("Updating user {}", username);
+		AtomicReference<String> encodedPassword = new AtomicReference<>();
+		User updated = modifyUser(username, current -> {
+			User desired = current.copy();
+			change.accept(desired);
+			if(desired.getPassword() != null && !desired.getPassword().equals(current.getPassword())){
+				log.info("Password for {} has been updated", username);
+				String raw = desired.getPassword();
+				desired.setPassword(encodedPassword.updateAndGet(encoded -> encoded != null ? encoded : passwordEncoder.encode(raw)));
+			}
+			Update update = changedFields(current, desired);
+			if(desired.getActivationToken() == null && current.getActivationExpires() != null){
+				update.unset("activationExpires");
+			}
+			if(securityAttributesChanged(current, desired)){
+				update.inc("securityVersion", 1).set("securityVersionChanged", LocalDateTime.now());
+			}
+			return update.getUpdateObject().isEmpty() ? null : update;
+		});
+		if(updated != null && updated.getSecurityVersionChanged() != null) securityVersionRegistry.bump(updated.getEmail(), updated.getSecurityVersion());
+		return updated;
+	}
+
+	/**
+	 * Read-modify-write of one user under optimistic locking: {@code change} computes the update from the current
+	 * document (or returns null when there is nothing to do), and the write only applies if the document still has
+	 * the version it was computed from. MongoTemplate increments the version with every update.
+	 */
+	private User modifyUser(String email, Function<User, Update> change) {
+		for(int attempt = 1; attempt <= maxUpdateAttempts; attempt++){
+			Optional<User> found = userRepository.findUserByEmail(email);
+			if(found.isEmpty()) return null;
+			User current = found.get();
+			Update update = change.apply(current);
+			if(update == null) return current;
+			Query query = new Query(Criteria.where("_id").is(current.getId()).and("version").is(current.getVersion()));
+			User updated = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class);
+			if(updated != null){
+				userCache.invalidate(email);
+				return updated;
+			}
+			log.debug("User {} was changed concurrently, retrying update ({} of {})", email, attempt, maxUpdateAttempts);
 		}
-		return userRepository.save(user);
+		throw new OptimisticLockingFailureException("User " + email + " kept changing, gave up after " + maxUpdateAttempts + " attempts");
+	}
+
+	private Update changedFields(User current, User desired) {
+		Document before = new Document();
+		Document after = new Document();
+		mongoTemplate.getConverter().write(current, before);
+		mongoTemplate.getConverter().write(desired, after);
+		Update update = new Update();
+		after.forEach((field, value) -> {
+			if(!MANAGED_FIELDS.contains(field) && !Objects.equals(value, before.get(field))) update.set(field, value);
+		});
+		before.keySet().forEach(field -> {
+			if(!MANAGED_FIELDS.contains(field) && !after.containsKey(field)) update.unset(field);
+		});
+		return update;
+	}
+
+	private boolean securityAttributesChanged(User currentUser, User user) {
+		return currentUser.isSuspended() != user.isSuspended() || !roleNames(currentUser).equals(roleNames(user));
+	}
+
+	private Set<String> roleNames(User user) {
+		return user.getRoles().stream().map(Role::getName).collect(Collectors.toSet());
 	}
 
 	@Override
 	public Role saveRole(Role role) {
-		return roleRepository.save(role);
+		Role saved = roleRepository.save(role);
+		permissionRegistry.bitOf(saved.getName());
+		return saved;
 	}
 
 	@Override
 	public boolean addRoleToUser(String username, String roleName) {
-		Optional<User> user = userRepository.findUserByEmail(username);
+		Optional<User> user = userCache.findUserByEmail(username);
 		if(user.isEmpty()){
 			log.warn("Unable to find user {} to add role {}", username, roleName);
 			return false;
@@ -119,24 +219,98 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 			return false;
 		}
 		log.info("Adding role {} to user {}", roleName, username);
-		return user.get().getRoles().add(role.get());
+		Query query = new Query(Criteria.where("email").is(username).and("roles.name").ne(roleName));
+		Update update = new Update().push("roles", role.get()).inc("securityVersion", 1).set("securityVersionChanged", LocalDateTime.now());
+		User updated = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class);
+		if(updated == null) return false;
+		userCache.invalidate(updated.getEmail());
+		securityVersionRegistry.bump(updated.getEmail(), updated.getSecurityVersion());
+		return true;
+	}
+
+	/**
+	 * Gives a new, not yet saved account an activation token and the time by which it has to be activated. Returns
+	 * the token to mail; the user only keeps its digest.
+	 */
+	public String assignActivationToken(User user) {
+		String token = UUID.randomUUID().toString();
+		user.setActivationToken(User.digest(token));
+		user.setActivationExpires(user.getCreated().plusSeconds(accountActivationExpire));
+		return token;
+	}
+
+	/**
+	 * Replaces the activation token of an account that has not been activated yet, as only the digest of the old one
+	 * is stored. The activation deadline stays as it was. Returns the new token, or null when there is no such account
+	 * awaiting activation.
+	 */
+	@Override
+	public String renewActivationToken(String username) {
+		String token = UUID.randomUUID().toString();
+		Query query = new Query(Criteria.where("email").is(username).and("activationToken").exists(true));
+		query.fields().include("email");
+		User renewed = mongoTemplate.findAndModify(query, new Update().set("activationToken", User.digest(token)), User.class);
+		if(renewed == null) return null;
+		userCache.invalidate(renewed.getEmail());
+		return token;
+	}
+
+	/**
+	 * Clears the activation token in one conditional update. Returns false when no account has the token.
+	 */
+	@Override
+	public boolean activateAccount(String token) {
+		Query query = new Query(Criteria.where("activationToken").is(User.digest(token)));
+		query.fields().include("email");
+		Update update = new Update().unset("activationToken").unset("activationExpires");
+		User activated = mongoTemplate.findAndModify(query, update, User.class);
+		if(activated == null) return false;
+		userCache.invalidate(activated.getEmail());
+		return true;
+	}
+
+	/**
+	 * Stores a new password reset token and returns the updated user, or null when there is no such user.
+	 */
+	@Override
+	public User setForgottenPasswordToken(String username, String token, LocalDateTime expires) {
+		Query query = new Query(Criteria.where("email").is(username));
+		Update update = new Update().set("forgottenPasswordToken", User.digest(token)).set("forgottenPasswordTokenExpire", expires);
+		User updated = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class);
+		if(updated != null) userCache.invalidate(username);
+		return updated;
+	}
+
+	/**
+	 * Sets a new password if {@code token} is still the user's unexpired reset token, and consumes the token in the
+	 * same update, so a token can only be used once even when two resets race.
+	 */
+	@Override
+	public boolean resetPassword(String username, String token, String password) {
+		String encoded = passwordEncoder.encode(password);
+		Query query = new Query(Criteria.where("email").is(username).and("forgottenPasswordToken").is(User.digest(token))
+				.and("forgottenPasswordTokenExpire").gt(LocalDateTime.now()));
+		Update update = new Update().set("password", encoded).unset("forgottenPasswordToken").unset("forgottenPasswordTokenExpire");
+		if(mongoTemplate.updateFirst(query, update, User.class).getModifiedCount() == 0) return false;
+		userCache.invalidate(username);
+		return true;
 	}
 
 	@Override
 	public User getUser(String username) {
-		Optional<User> user = userRepository.findUserByEmail(username);
+		Optional<User> user = userCache.findUserByEmail(username);
 		return user.isPresent() ? user.get() : null;
 	}
 
 	@Override
 	public User findUserByActivationToken(String token) {
-		Optional<User> user = userRepository.findUserByActivationToken(token);
+		Optional<User> user = userRepository.findUserByActivationToken(User.digest(token));
 		return user.isPresent() ? user.get() : null;
 	}
 
 	@Override
 	public User findUserByForgottenPasswordToken(String token) {
-		Optional<User> user = userRepository.findUserByForgottenPasswordToken(token);
+		Optional<User> user = userRepository.findUserByForgottenPasswordToken(User.digest(token));
 		return user.isPresent() ? user.get() : null;
 	}
 
@@ -147,73 +321,47 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 
 	@Override
 	public List<User> getUsers(int start, int limit) {
-		return userRepository.findAll().subList(start, limit);
+		return mongoTemplate.find(new Query().with(Sort.by("_id")).skip(start).limit(Math.max(limit - start, 0)), User.class);
 	}
 
 	@Override
 	public boolean incrementLoginAttempt(String username, String ipAddress) {
-		User user = getUser(username);
-		if(user != null){
-			int attempts = user.getLoginAttempts();
-			user.setLoginAttempts(++attempts);
-			user.setLastLoginAttempt(LocalDateTime.now());
-			if(ipAddress != null) user.setFailedLoginIpAddress(ipAddress);
-			updateUser(user);
-			return true;
-		}
-		return false;
+		return loginThrottleService.recordFailure(username, ipAddress);
 	}
 
 	@Override
 	public boolean resetLoginAttempts(String username) {
-		User user = getUser(username);
-		if(user != null){
-			user.setLoginAttempts(0);
-			updateUser(user);
-			return true;
-		}
-		return false;
+		return resetLoginAttempts(username, null);
+	}
+
+	@Override
+	public boolean resetLoginAttempts(String username, String ipAddress) {
+		loginThrottleService.recordSuccess(username, ipAddress);
+		return true;
 	}
 
 	@Override
 	public boolean loginAttemptsExceeded(String username) {
-		User user = getUser(username);
-		if(user != null){
-			int attempts = user.getLoginAttempts();
-			if(attempts > 3){
-				LocalDateTime lastLoginAttempt = user.getLastLoginAttempt();
-				int x = attempts-3;
-				Long wait = ((10*x) / 2) * 60l;
-				LocalDateTime now = LocalDateTime.now();
-				lastLoginAttempt = lastLoginAttempt.plusSeconds(wait);
-				if( lastLoginAttempt.isAfter(now) ){
-					log.info("Can't log you in for now, you need to wait a little bit longer");
-					return true;
-				}
-			}
+		return loginAttemptsExceeded(username, null);
+	}
+
+	@Override
+	public boolean loginAttemptsExceeded(String username, String ipAddress) {
+		if(loginThrottleService.isBlocked(username, ipAddress)){
+			log.info("Can't log you in for now, you need to wait a little bit longer");
+			return true;
 		}
-		log.info("You're good to go");
 		return false;
 	}
 
 	@Override
 	public int getWaitTime(String username){
-		User user = getUser(username);
-		if(user != null){
-			int attempts = user.getLoginAttempts();
-				LocalDateTime lastLoginAttempt = user.getLastLoginAttempt();
-				int x = attempts-3;
-				Long wait = ((10*x) / 2) * 60l;
-				Long now = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
-				lastLoginAttempt = lastLoginAttempt.plusSeconds(wait);
-				long target = lastLoginAttempt.toEpochSecond(ZoneOffset.UTC);
-				wait = target - now;
-				if(wait>0) {
-					log.info("Seconds to wait: {}", wait);
-					return (int) Math.ceil(wait/60);
-				}
-		}
-		return 0;
+		return getWaitTime(username, null);
+	}
+
+	@Override
+	public int getWaitTime(String username, String ipAddress){
+		return loginThrottleService.getWaitTime(username, ipAddress);
 	}
 
 	public User signUpUser(User user) {
@@ -241,8 +389,7 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 		String encodedPwd = passwordEncoder.encode(pwd);
 		user.setPassword(encodedPwd);
 
-		String activationToken = UUID.randomUUID().toString();
-		user.setActivationToken(activationToken);
+		String activationToken = assignActivationToken(user);
 
 		Role role = new Role("USER");
 		List<Role> roles = new ArrayList<>();
@@ -251,9 +398,9 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 
 		log.info("ready to create user");
 		final User createdUser = userRepository.save(user);
-		log.info("User created, send confirmation email");
-		sendConfirmationMail( user.getEmail(), user.getActivationToken(), user.getFirstName() );
-		log.info("Confirmation email sent");
+		userCache.invalidate(createdUser.getEmail());
+		log.info("User created, queue confirmation email");
+		sendConfirmationMail( user.getEmail(), activationToken, user.getFirstName() );
 		return user;
 	}
 
@@ -272,27 +419,16 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 		return emailValidator.isValid(email);
 	}
 
+	public Map<String, Object> confirmationMailVariables(String token, String name) {
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("name", name);
+		variables.put("link", String.format("%suser/confirm-account?token=%s", emailSenderService.getAppUrl(), token));
+		return variables;
+	}
+
 	public void sendConfirmationMail(String userMail, String token, String name) {
 		try {
-			emailSenderService.addTo(userMail);
-			emailSenderService.setSubject("Please activate your account");
-			emailSenderService.setFrom(emailFrom);
-
-			StringBuilder builder = new StringBuilder();
-			String link = String.format("%suser/confirm-account?token=%s", emailSenderService.getAppUrl(),token);
-
-			builder.append(String.format("<h4>Dear %s</h4><p>Thank you for registering on %s.<br />", name, emailSenderService.getAppName()));
-			builder.append("Please click on the below link to activate your account:<br />");
-			builder.append(String.format("<a href=\"%s\"><b>Activate Account</b></a><br /><br />", link));
-			builder.append(String.format("Alternatively, you can copy and paste this link in your browser:<br />%s <br /></p>", link));
-			builder.append(String.format("<p>Regards, <br />%s</p>", emailSenderService.getAppName()));
-			String body = builder.toString();
-
-			emailSenderService.setHtmlMsg(body);
-			String plain = Jsoup.parse(body).text();
-			emailSenderService.setTextMsg(plain);
-			emailSenderService.send();
-
+			emailOutboxService.enqueue(userMail, "confirm-account", confirmationMailVariables(token, name));
 		}
 		catch (Exception e){
 			log.warn(e.getMessage());
@@ -302,26 +438,11 @@ public class UserService implements UserDetailsService, UserServiceInterface {
 	@Override
 	public void sendPasswordResetMail(String emailAddress, String token, String name, LocalDateTime forgottenPasswordTokenExpire) {
 		try {
-			emailSenderService.addTo(emailAddress);
-			emailSenderService.setSubject("Forgotten password reset");
-			emailSenderService.setFrom(emailFrom);
-
-			StringBuilder builder = new StringBuilder();
-			String link = String.format("%suser/reset-password?token=%s", emailSenderService.getAppUrl(),token);
-
-			builder.append(String.format("<h4>Dear %s</h4><p>We received your request to reset your password on %s.<br />", name, emailSenderService.getAppName()));
-			builder.append("Please click on the below link to reset your account password:<br />");
-			builder.append(String.format("<a href=\"%s\"><b>Reset Password</b></a><br /><br />", link));
-			builder.append(String.format("Alternatively, you can copy and paste this link in your browser:<br />%s <br /></p>", link));
-			builder.append(String.format("<p>The activation link will expire on %s.</p>", forgottenPasswordTokenExpire));
-			builder.append("<p>If you did not send this request, someone else may have tried to access your account. To be safe, we recommend that you logout of all your active sessions.</p>");
-			builder.append(String.format("<p>Regards, <br />%s</p>", emailSenderService.getAppName()));
-			String body = builder.toString();
-
-			emailSenderService.setHtmlMsg(body);
-			String plain = Jsoup.parse(body).text();
-			emailSenderService.setTextMsg(plain);
-			emailSenderService.send();
+			Map<String, Object> variables = new HashMap<>();
+			variables.put("name", name);
+			variables.put("link", String.format("%suser/reset-password?token=%s", emailSenderService.getAppUrl(), token));
+			variables.put("expires", forgottenPasswordTokenExpire);
+			emailOutboxService.enqueue(emailAddress, "password-reset", variables);
 		}
 		catch (Exception e){
 			log.warn(e.getMessage());
@@ -6,10 +6,16 @@ import com.michael.cwphosting.auth.models.User;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface UserServiceInterface {
 	User saveUser(User user);
 	User updateUser(User user);
+	User updateUser(String username, Consumer<User> change);
+	String renewActivationToken(String username);
+	boolean activateAccount(String token);
+	User setForgottenPasswordToken(String username, String token, LocalDateTime expires);
+	boolean resetPassword(String username, String token, String password);
 	User signUpUser(User user);
 	Role saveRole(Role role);
 	boolean addRoleToUser(String username, String roleName);
@@ -18,8 +24,11 @@ public interface UserServiceInterface {
 	List<User> getUsers(int start, int limit);
 	boolean incrementLoginAttempt(String username, String ipAddress);
 	boolean resetLoginAttempts(String username);
+	boolean resetLoginAttempts(String username, String ipAddress);
 	boolean loginAttemptsExceeded(String username);
+	boolean loginAttemptsExceeded(String username, String ipAddress);
 	int getWaitTime(String username);
+	int getWaitTime(String username, String ipAddress);
 	void sendConfirmationMail(String emailAddress, String token, String name);
 	void sendPasswordResetMail(String emailAddress, String token, String name, LocalDateTime forgottenPasswordTokenExpire);
 	boolean isValidPassword(String password);
@@ -0,0 +1,66 @@
+package com.michael.cwphosting.auth.utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over strings. {@link #mightContain} never returns false for a value that was put, and for
+ * other values returns true with roughly the false positive rate it was sized for. Values cannot be removed; build a
+ * new filter instead.
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray bits;
+	private final int bitCount;
+	private final int hashCount;
+
+	public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+		int n = Math.max(1, expectedInsertions);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, m));
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+		this.bits = new AtomicLongArray((bitCount + 63) / 64);
+	}
+
+	public void put(String value) {
+		long hash = hash(value);
+		int h1 = (int) hash, h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			int bit = index(h1 + i * h2);
+			long mask = 1L << bit;
+			int word = bit >>> 6;
+			long current;
+			while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+				// lost a race with another writer on the same word, retry
+			}
+		}
+	}
+
+	public boolean mightContain(String value) {
+		long hash = hash(value);
+		int h1 = (int) hash, h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			int bit = index(h1 + i * h2);
+			if ((bits.get(bit >>> 6) & (1L << bit)) == 0) return false;
+		}
+		return true;
+	}
+
+	private int index(int combined) {
+		return (combined & Integer.MAX_VALUE) % bitCount;
+	}
+
+	private static long hash(String value) {
+		// 64-bit FNV-1a, then a murmur finaliser so both halves are well mixed
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,90 @@
+package com.michael.cwphosting.auth.utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV one record at a time: comma separated, fields optionally enclosed in double quotes, quotes
+ * inside quoted fields doubled, and line breaks allowed inside quoted fields. Blank lines are skipped.
+ */
+public class CsvReader implements Closeable {
+
+	private final Reader reader;
+	private int peeked = -2;
+
+	public CsvReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Returns the fields of the next record, or null at the end of the input.
+	 */
+	public List<String> next() throws IOException {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean any = false;
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				if (!any) return null;
+				fields.add(field.toString());
+				return fields;
+			}
+			if (quoted) {
+				if (c == '"') {
+					if (peek() == '"') {
+						read();
+						field.append('"');
+					}
+					else {
+						quoted = false;
+					}
+				}
+				else {
+					field.append((char) c);
+				}
+				continue;
+			}
+			if (c == '\r' || c == '\n') {
+				if (c == '\r' && peek() == '\n') read();
+				if (!any) continue;
+				fields.add(field.toString());
+				return fields;
+			}
+			any = true;
+			if (c == '"') {
+				quoted = true;
+			}
+			else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else {
+				field.append((char) c);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private int read() throws IOException {
+		if (peeked != -2) {
+			int c = peeked;
+			peeked = -2;
+			return c;
+		}
+		return reader.read();
+	}
+
+	private int peek() throws IOException {
+		if (peeked == -2) peeked = reader.read();
+		return peeked;
+	}
+}
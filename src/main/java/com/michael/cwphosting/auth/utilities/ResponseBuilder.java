@@ -8,7 +8,9 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 public class ResponseBuilder {
@@ -34,4 +36,14 @@ public class ResponseBuilder {
 		msg.put("message", message);
 		response.setContentType(APPLICATION_JSON_VALUE);
 	}
+
+	public static void sendTooManyRequests(HttpServletResponse response, String message, long retryAfterSeconds) throws IOException {
+		response.setStatus(TOO_MANY_REQUESTS.value());
+		response.setHeader(RETRY_AFTER, String.valueOf(retryAfterSeconds));
+		response.setHeader("message", message);
+		Map<String,String> msg = new HashMap<>();
+		msg.put("message", message);
+		response.setContentType(APPLICATION_JSON_VALUE);
+		new ObjectMapper().writeValue(response.getOutputStream(), msg);
+	}
 }
@@ -0,0 +1,27 @@
+package com.michael.cwphosting.auth.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class Sha256Digest {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public static String digest(byte[] input){
+		try {
+			byte[] array = MessageDigest.getInstance("SHA-256").digest(input);
+			char[] chars = new char[array.length * 2];
+			for (int i = 0; i < array.length; ++i) {
+				chars[i * 2] = HEX[(array[i] >> 4) & 0xF];
+				chars[i * 2 + 1] = HEX[array[i] & 0xF];
+			}
+			return new String(chars);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	public static String digest(String input){
+		return digest(input.getBytes(StandardCharsets.UTF_8));
+	}
+}
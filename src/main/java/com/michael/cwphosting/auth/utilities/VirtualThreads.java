@@ -0,0 +1,63 @@
+package com.michael.cwphosting.auth.utilities;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads through reflection so the code still compiles for Java 17 and only needs a Java 21
+ * runtime when the virtual thread mode is switched on.
+ */
+public class VirtualThreads {
+
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method FACTORY;
+
+	static {
+		Method ofVirtual = null, name = null, factory = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			// preview builds expose the methods but refuse to start virtual threads
+			((ThreadFactory) factory.invoke(ofVirtual.invoke(null))).newThread(() -> {});
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+	}
+
+	public static boolean isSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	public static ThreadFactory factory(String prefix) {
+		if (!isSupported()) {
+			throw new IllegalStateException("Virtual threads need Java 21 or later, running on " + Runtime.version());
+		}
+		try {
+			Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+			return (ThreadFactory) FACTORY.invoke(builder);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to create a virtual thread factory", e);
+		}
+	}
+
+	public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+		ThreadFactory factory = factory(prefix);
+		try {
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Unable to create a virtual thread executor", e);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.michael.cwphosting.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Creates the indexes declared on the mapped documents on a background thread once the context has started, in place
+ * of {@code spring.data.mongodb.auto-index-creation}, which builds them one by one before the context is ready. The
+ * indexes are requested with {@code background: true} so older servers do not lock the collection meanwhile. Until the
+ * build has finished, lookups may scan and the unique constraints are not enforced yet.
+ */
+@Slf4j
+public class BackgroundIndexCreator implements ApplicationListener<ApplicationStartedEvent> {
+
+	private final MongoTemplate mongoTemplate;
+
+	public BackgroundIndexCreator(MongoTemplate mongoTemplate) {
+		this.mongoTemplate = mongoTemplate;
+	}
+
+	@Override
+	public void onApplicationEvent(ApplicationStartedEvent event) {
+		Thread builder = new CustomizableThreadFactory("index-builder-").newThread(this::createIndexes);
+		builder.setDaemon(true);
+		builder.start();
+	}
+
+	void createIndexes() {
+		long start = System.currentTimeMillis();
+		int created = 0;
+		MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext = mongoTemplate.getConverter().getMappingContext();
+		IndexResolver resolver = IndexResolver.create(mappingContext);
+		for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+			if (!entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) continue;
+			for (IndexDefinition index : resolver.resolveIndexFor(entity.getTypeInformation())) {
+				try {
+					mongoTemplate.indexOps(entity.getCollection()).ensureIndex(inBackground(index));
+					created++;
+				}
+				catch (Exception e) {
+					log.warn("Unable to create index {} on {}: {}", index.getIndexKeys().toJson(), entity.getCollection(), e.getMessage());
+				}
+			}
+		}
+		log.info("Ensured {} indexes in {} ms", created, System.currentTimeMillis() - start);
+	}
+
+	private static IndexDefinition inBackground(IndexDefinition index) {
+		return new IndexDefinition() {
+			@Override
+			public Document getIndexKeys() {
+				return index.getIndexKeys();
+			}
+
+			@Override
+			public Document getIndexOptions() {
+				Document options = new Document(index.getIndexOptions());
+				options.put("background", true);
+				return options;
+			}
+		};
+	}
+}
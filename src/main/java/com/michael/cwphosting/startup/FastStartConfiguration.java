@@ -0,0 +1,65 @@
+package com.michael.cwphosting.startup;
+
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
+import com.michael.cwphosting.auth.security.TokenRevocationRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Startup settings used by the {@code faststart} profile: background index builds, a token path warm-up before the
+ * application reports ready, and which beans stay eager under {@code spring.main.lazy-initialization}.
+ */
+@Configuration
+@Profile("faststart")
+public class FastStartConfiguration {
+
+	/**
+	 * Beans that do work on their own, through {@code @Scheduled} jobs or workers started in {@code @PostConstruct},
+	 * are created up front even with lazy initialization, since nothing else may ever ask for them.
+	 */
+	@Bean
+	static LazyInitializationExcludeFilter selfDrivenBeansExcludeFilter() {
+		return (beanName, beanDefinition, beanType) -> beanType != null && drivesItself(beanType);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "spring.startup.background-indexes", havingValue = "true")
+	BackgroundIndexCreator backgroundIndexCreator(MongoTemplate mongoTemplate) {
+		return new BackgroundIndexCreator(mongoTemplate);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "spring.startup.warm-up.enabled", havingValue = "true")
+	WarmUpRunner warmUpRunner(TokenUtil tokenUtil, SecurityVersionRegistry securityVersionRegistry, TokenRevocationRegistry tokenRevocationRegistry,
+							  @Value("${jwt.authorization.stateless:false}") boolean stateless, ApplicationContext applicationContext,
+							  @Value("${server.address:127.0.0.1}") String address,
+							  @Value("${spring.startup.warm-up.iterations:2000}") int iterations,
+							  @Value("${spring.startup.warm-up.requests:200}") int requests,
+							  @Value("${spring.startup.warm-up.timeout:10000}") long timeout) {
+		return new WarmUpRunner(tokenUtil, securityVersionRegistry, tokenRevocationRegistry, stateless, applicationContext, address, iterations, requests, timeout);
+	}
+
+	private static boolean drivesItself(Class<?> beanType) {
+		AtomicBoolean found = new AtomicBoolean();
+		ReflectionUtils.doWithMethods(beanType, method -> found.set(true), FastStartConfiguration::startsWork);
+		return found.get();
+	}
+
+	private static boolean startsWork(Method method) {
+		return AnnotatedElementUtils.hasAnnotation(method, Scheduled.class) || method.isAnnotationPresent(PostConstruct.class);
+	}
+}
@@ -0,0 +1,66 @@
+package com.michael.cwphosting.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the startup phases from JVM start to the application accepting traffic and logs them once it is ready:
+ * {@code jvm} up to the first Spring Boot event, {@code prepare} for the environment and context set up, {@code refresh}
+ * for bean creation (and synchronous index builds) up to the web server listening, and {@code runners} for seeding and
+ * warm-up. The phases are also published as the {@code application.startup.phase} gauge. Registered on the
+ * {@link org.springframework.boot.SpringApplication} in {@code main}, as the early events are sent before any bean
+ * exists.
+ */
+@Slf4j
+public class StartupReport implements ApplicationListener<ApplicationEvent> {
+
+	private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+	private long starting;
+	private long prepared;
+	private long started;
+	private long webServer;
+
+	@Override
+	public void onApplicationEvent(ApplicationEvent event) {
+		if (event instanceof ApplicationStartingEvent) starting = event.getTimestamp();
+		else if (event instanceof ApplicationPreparedEvent) prepared = event.getTimestamp();
+		else if (event instanceof WebServerInitializedEvent) webServer = event.getTimestamp();
+		else if (event instanceof ApplicationStartedEvent) started = event.getTimestamp();
+		else if (event instanceof ApplicationReadyEvent) report((ApplicationReadyEvent) event);
+	}
+
+	private void report(ApplicationReadyEvent event) {
+		long ready = event.getTimestamp();
+		Map<String, Long> phases = new LinkedHashMap<>();
+		phases.put("jvm", starting - jvmStart);
+		phases.put("prepare", prepared - starting);
+		phases.put("refresh", started - prepared);
+		phases.put("runners", ready - started);
+		StringBuilder line = new StringBuilder();
+		phases.forEach((phase, millis) -> line.append(line.length() == 0 ? "" : ", ").append(phase).append(' ').append(millis).append(" ms"));
+		if (webServer > 0) line.append(" (web server listening at ").append(webServer - jvmStart).append(" ms)");
+		log.info("Ready {} ms after JVM start: {}", ready - jvmStart, line);
+
+		event.getApplicationContext().getBeanProvider(MeterRegistry.class).ifAvailable(registry -> {
+			phases.forEach((phase, millis) -> TimeGauge.builder("application.startup.phase", () -> millis, TimeUnit.MILLISECONDS)
+					.tag("phase", phase)
+					.register(registry));
+			TimeGauge.builder("application.startup.phase", () -> ready - jvmStart, TimeUnit.MILLISECONDS)
+					.tag("phase", "total")
+					.register(registry);
+		});
+	}
+}
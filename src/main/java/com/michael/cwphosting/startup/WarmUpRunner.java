@@ -0,0 +1,110 @@
+package com.michael.cwphosting.startup;
+
+import com.michael.cwphosting.auth.jwt.JwtTokenAuthorizationOncePerRequestFilter;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.jwt.VerifiedTokenCache;
+import com.michael.cwphosting.auth.security.SecurityVersionRegistry;
+import com.michael.cwphosting.auth.security.TokenRevocationRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+
+/**
+ * Runs the access token path before the application reports ready, so the first real requests do not pay for class
+ * loading and interpreted code. Tokens for a made-up user are generated and checked twice, a cache miss and a hit,
+ * through {@link JwtTokenAuthorizationOncePerRequestFilter#authenticate(String)}: verification, the token cache, the
+ * revocation check and the authorities of the mode that is configured. The filter used for this is a separate one whose
+ * user lookup returns the made-up user and whose cache and meters are its own, so the warm-up reaches neither Mongo nor
+ * the shared cache and metrics. Then requests are sent to the application's own liveness probe, which takes them
+ * through the rate limit filter, the security chain and the dispatch of whichever web stack is running. Unlike the full
+ * health endpoint, the probe does not contact Mongo or the mail server.
+ * Stops early once {@code spring.startup.warm-up.timeout} has passed.
+ */
+@Slf4j
+public class WarmUpRunner implements ApplicationRunner {
+
+	private static final String USERNAME = "warm-up@localhost";
+
+	private final TokenUtil tokenUtil;
+	private final SecurityVersionRegistry securityVersionRegistry;
+	private final TokenRevocationRegistry tokenRevocationRegistry;
+	private final boolean stateless;
+	private final ApplicationContext applicationContext;
+	private final String address;
+	private final int iterations;
+	private final int requests;
+	private final long timeout;
+
+	public WarmUpRunner(TokenUtil tokenUtil, SecurityVersionRegistry securityVersionRegistry, TokenRevocationRegistry tokenRevocationRegistry,
+						boolean stateless, ApplicationContext applicationContext, String address, int iterations, int requests, long timeout) {
+		this.tokenUtil = tokenUtil;
+		this.securityVersionRegistry = securityVersionRegistry;
+		this.tokenRevocationRegistry = tokenRevocationRegistry;
+		this.stateless = stateless;
+		this.applicationContext = applicationContext;
+		this.address = address;
+		this.iterations = iterations;
+		this.requests = requests;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		long start = System.currentTimeMillis();
+		long deadline = start + timeout;
+		UserDetails user = User.withUsername(USERNAME).password("").authorities(Collections.emptyList()).build();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		JwtTokenAuthorizationOncePerRequestFilter filter = new JwtTokenAuthorizationOncePerRequestFilter(tokenUtil, username -> user,
+				new VerifiedTokenCache(tokenUtil, meterRegistry, iterations), securityVersionRegistry, tokenRevocationRegistry, meterRegistry, stateless);
+
+		int generated = 0;
+		try {
+			while (generated < iterations && System.currentTimeMillis() < deadline) {
+				String authorization = "Bearer " + tokenUtil.generateToken(user);
+				filter.authenticate(authorization);
+				filter.authenticate(authorization);
+				generated++;
+			}
+		}
+		catch (Exception e) {
+			log.warn("Warm-up tokens stopped after {}: {}", generated, e.getMessage());
+		}
+
+		int sent = 0;
+		if (applicationContext instanceof WebServerApplicationContext) {
+			int port = ((WebServerApplicationContext) applicationContext).getWebServer().getPort();
+			HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+			URI uri = URI.create("http://" + address + ":" + port + "/actuator/health/liveness");
+			try {
+				while (sent < requests && System.currentTimeMillis() < deadline) {
+					// the first request creates the lazy web and actuator beans, so it may take the rest of the budget
+					HttpRequest request = HttpRequest.newBuilder(uri)
+							.timeout(Duration.ofMillis(Math.max(1, deadline - System.currentTimeMillis())))
+							.GET()
+							.build();
+					client.send(request, HttpResponse.BodyHandlers.discarding());
+					sent++;
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (Exception e) {
+				log.warn("Warm-up requests to {} stopped after {}: {}", uri, sent, e.getMessage());
+			}
+		}
+		log.info("Warmed up with {} tokens and {} requests in {} ms", generated, sent, System.currentTimeMillis() - start);
+	}
+}
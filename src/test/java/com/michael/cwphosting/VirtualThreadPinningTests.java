@@ -0,0 +1,66 @@
+package com.michael.cwphosting;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A virtual thread that blocks inside a {@code synchronized} method or block stays pinned to its carrier thread, so
+ * request-path code should guard shared state with {@code java.util.concurrent} locks instead. Scans the compiled
+ * application classes for monitors; blocking inside libraries is reported at runtime by -Djdk.tracePinnedThreads.
+ */
+class VirtualThreadPinningTests {
+
+	@Test
+	void applicationCodeHasNoSynchronizedSections() throws Exception {
+		Path classes = Paths.get(CwpHostingManagerApplication.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		List<String> monitors = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(classes)) {
+			for (Path file : files.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList())) {
+				monitors.addAll(findMonitors(file));
+			}
+		}
+		assertTrue(monitors.isEmpty(), "synchronized sections pin virtual threads: " + monitors);
+	}
+
+	private List<String> findMonitors(Path file) throws IOException {
+		List<String> monitors = new ArrayList<>();
+		try (InputStream in = Files.newInputStream(file)) {
+			new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM9) {
+				private String className;
+
+				@Override
+				public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+					className = name.replace('/', '.');
+				}
+
+				@Override
+				public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+					String method = className + "." + name;
+					if ((access & Opcodes.ACC_SYNCHRONIZED) != 0) monitors.add(method);
+					return new MethodVisitor(Opcodes.ASM9) {
+						@Override
+						public void visitInsn(int opcode) {
+							if (opcode == Opcodes.MONITORENTER) monitors.add(method + " (block)");
+						}
+					};
+				}
+			}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		}
+		return monitors;
+	}
+}
@@ -0,0 +1,33 @@
+package com.michael.cwphosting.auth.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class LoginTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void seededAdminReceivesTokens() throws Exception {
+		mockMvc.perform(post("/login").servletPath("/login")
+						.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+						.param("email", "admin@example.com")
+						.param("password", "password"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.accessToken").isNotEmpty())
+				.andExpect(jsonPath("$.refreshToken").isNotEmpty())
+				.andExpect(header().exists("access_token"));
+	}
+}
@@ -0,0 +1,46 @@
+package com.michael.cwphosting.auth.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+		"spring.user.rate-limit.enabled=true",
+		"spring.user.rate-limit.mail.capacity=2",
+		"spring.user.rate-limit.mail.per-minute=1"
+})
+@AutoConfigureMockMvc
+class RateLimitTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void signUpIsRateLimitedPerAddress() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			mockMvc.perform(signUp("rate-limited-" + i + "@example.com"))
+					.andExpect(status().isCreated());
+		}
+		mockMvc.perform(signUp("rate-limited-2@example.com"))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().exists("Retry-After"));
+	}
+
+	private static RequestBuilder signUp(String email) {
+		return post("/user").servletPath("/user")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"firstName\":\"Rate\",\"lastName\":\"Limited\",\"email\":\"" + email + "\",\"password\":\"Secret#123\"}")
+				.with(request -> {
+					request.setRemoteAddr("10.9.8.7");
+					return request;
+				});
+	}
+}
@@ -0,0 +1,123 @@
+package com.michael.cwphosting.auth.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles({"inmemory", "reactive"})
+class ReactiveAuthControllerTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private TokenUtil tokenUtil;
+
+	@Test
+	void loginRefreshAndAuthorizedRequest() {
+		JsonNode tokens = login("admin@example.com", "password")
+				.expectStatus().isOk()
+				.expectHeader().exists("access_token")
+				.expectBody(JsonNode.class).returnResult().getResponseBody();
+		assertNotNull(tokens);
+
+		client.get().uri("/token/refresh")
+				.header(AUTHORIZATION, "Bearer " + tokens.get("refreshToken").asText())
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.accessToken").exists();
+
+		client.get().uri("/users?limit=1&fields=email")
+				.header(AUTHORIZATION, "Bearer " + tokens.get("accessToken").asText())
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.items[0].email").isEqualTo("admin@example.com");
+	}
+
+	@Test
+	void rejectsWrongPasswordAndMissingToken() {
+		login("admin@example.com", "not-the-password")
+				.expectStatus().isForbidden()
+				.expectBody().jsonPath("$.message").isEqualTo("Bad credentials");
+
+		client.get().uri("/users")
+				.exchange()
+				.expectStatus().isForbidden()
+				.expectBody().jsonPath("$.message").isEqualTo("A valid access token is required");
+	}
+
+	@Test
+	void revokedAccessTokenIsRejected() {
+		String revoked = accessToken();
+		String other = accessToken();
+
+		client.get().uri("/token/revoke")
+				.header(AUTHORIZATION, "Bearer " + revoked)
+				.exchange()
+				.expectStatus().isOk();
+
+		client.get().uri("/users?limit=1")
+				.header(AUTHORIZATION, "Bearer " + revoked)
+				.exchange()
+				.expectStatus().isForbidden()
+				.expectBody().jsonPath("$.message").isEqualTo("This access token has been revoked");
+		client.get().uri("/users?limit=1")
+				.header(AUTHORIZATION, "Bearer " + other)
+				.exchange()
+				.expectStatus().isOk();
+	}
+
+	@Test
+	void revokeAllNeedsTheUsersOwnOrAnAdministratorsToken() {
+		String userToken = tokenUtil.generateToken(User.withUsername("revoke-all-user@example.com").password("unused").authorities("USER").build());
+
+		revokeAll("admin@example.com", null).expectStatus().isForbidden();
+		revokeAll("admin@example.com", userToken).expectStatus().isForbidden();
+
+		revokeAll("revoke-all-user@example.com", userToken).expectStatus().isOk();
+		revokeAll("revoke-all-user@example.com", userToken).expectStatus().isForbidden();
+		revokeAll("revoke-all-user@example.com", accessToken()).expectStatus().isOk();
+	}
+
+	@Test
+	void signUpGoesThroughTheBlockingUserService() {
+		client.post().uri("/user")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"firstName\":\"Reactive\",\"email\":\"reactive-sign-up@example.com\",\"password\":\"Secret#123\"}")
+				.exchange()
+				.expectStatus().isCreated()
+				.expectHeader().exists("Location");
+	}
+
+	private WebTestClient.ResponseSpec revokeAll(String username, String token) {
+		WebTestClient.RequestBodySpec request = client.post().uri("/token/revokeall").contentType(MediaType.APPLICATION_JSON);
+		if (token != null) request.header(AUTHORIZATION, "Bearer " + token);
+		return request.bodyValue("{\"username\":\"" + username + "\"}").exchange();
+	}
+
+	private String accessToken() {
+		JsonNode tokens = login("admin@example.com", "password")
+				.expectStatus().isOk()
+				.expectBody(JsonNode.class).returnResult().getResponseBody();
+		assertNotNull(tokens);
+		return tokens.get("accessToken").asText();
+	}
+
+	private WebTestClient.ResponseSpec login(String email, String password) {
+		return client.post().uri("/login")
+				.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+				.body(BodyInserters.fromFormData("email", email).with("password", password))
+				.exchange();
+	}
+}
@@ -0,0 +1,23 @@
+package com.michael.cwphosting.auth.controllers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsersControllerTests {
+
+	@Test
+	void gzipIsOnlyUsedWhenAcceptedWithAPositiveQuality() {
+		assertTrue(UsersController.acceptsGzip("gzip"));
+		assertTrue(UsersController.acceptsGzip("deflate, GZIP;q=0.5"));
+		assertTrue(UsersController.acceptsGzip("br;q=1.0, *;q=0.1"));
+
+		assertFalse(UsersController.acceptsGzip(null));
+		assertFalse(UsersController.acceptsGzip("identity"));
+		assertFalse(UsersController.acceptsGzip("gzip;q=0"));
+		assertFalse(UsersController.acceptsGzip("gzip; q=0.000, *"));
+		assertFalse(UsersController.acceptsGzip("*;q=0"));
+		assertFalse(UsersController.acceptsGzip("gzipped"));
+	}
+}
@@ -0,0 +1,71 @@
+package com.michael.cwphosting.auth.security;
+
+import com.michael.cwphosting.auth.exceptions.PasswordHashingRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTests {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final PasswordEncoder blocking = new PasswordEncoder() {
+		@Override
+		public String encode(CharSequence rawPassword) {
+			return rawPassword.toString();
+		}
+
+		@Override
+		public boolean matches(CharSequence rawPassword, String encodedPassword) {
+			try {
+				release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return rawPassword.toString().equals(encodedPassword);
+		}
+	};
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final ExecutorService callers = Executors.newFixedThreadPool(2);
+
+	@AfterEach
+	void shutdown() {
+		release.countDown();
+		callers.shutdownNow();
+	}
+
+	@Test
+	void delegatesToWrappedEncoder() {
+		@SuppressWarnings("deprecation")
+		BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(NoOpPasswordEncoder.getInstance(), 1, 1, 1000, registry);
+		assertTrue(encoder.matches("secret", encoder.encode("secret")));
+		encoder.shutdown();
+	}
+
+	@Test
+	void rejectsWhenQueueIsFull() throws Exception {
+		BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(blocking, 1, 1, 5000, registry);
+		callers.submit(() -> encoder.matches("a", "a"));
+		callers.submit(() -> encoder.matches("b", "b"));
+		long deadline = System.currentTimeMillis() + 5000;
+		while (encoder.getQueueDepth() < 1 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+		PasswordHashingRejectedException e = assertThrows(PasswordHashingRejectedException.class, () -> encoder.matches("c", "c"));
+		assertTrue(e.getRetryAfterSeconds() >= 1);
+		assertEquals(1.0, registry.get("password.hashing.rejected").counter().count());
+		assertEquals(1.0, registry.get("password.hashing.queue.depth").gauge().value());
+
+		release.countDown();
+		encoder.shutdown();
+	}
+}
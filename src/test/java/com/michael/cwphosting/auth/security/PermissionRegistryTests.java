@@ -0,0 +1,54 @@
+package com.michael.cwphosting.auth.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.models.Role;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class PermissionRegistryTests {
+
+	@Autowired
+	private PermissionRegistry registry;
+
+	@Autowired
+	private TokenUtil tokenUtil;
+
+	@Test
+	void rolesGetDistinctBitsAndShareOneAuthorityListPerMask() {
+		assertNotEquals(registry.bitOf("USER"), registry.bitOf("ADMIN"));
+		long mask = registry.maskOfRoles(List.of(new Role("USER"), new Role("ADMIN")));
+		assertTrue(registry.has(mask, "ADMIN"));
+		assertFalse(registry.has(registry.maskOfRoles(List.of(new Role("USER"))), "ADMIN"));
+
+		List<GrantedAuthority> authorities = registry.authorities(mask);
+		assertSame(authorities, registry.authoritiesOf(List.of(new Role("ADMIN"), new Role("USER"))));
+		assertEquals(2, authorities.size());
+	}
+
+	@Test
+	void accessTokensCarryAMaskInsteadOfRoleNames() {
+		String token = tokenUtil.generateToken(User.withUsername("perms@example.com").password("unused").authorities("USER", "ADMIN").build());
+		DecodedJWT decoded = tokenUtil.getDecodedToken(token);
+		assertTrue(decoded.getClaim("roles").isNull());
+		assertEquals(registry.mask(AuthorityUtils.createAuthorityList("USER", "ADMIN")), decoded.getClaim("perms").asLong());
+		assertSame(registry.authorities(decoded.getClaim("perms").asLong()), tokenUtil.getAuthorities(decoded));
+
+		String legacy = JWT.create().withSubject("perms@example.com").withClaim("roles", List.of("ADMIN")).sign(tokenUtil.getAlgorithm());
+		assertEquals(AuthorityUtils.createAuthorityList("ADMIN"), List.copyOf(tokenUtil.getAuthorities(tokenUtil.getDecodedToken(legacy))));
+	}
+}
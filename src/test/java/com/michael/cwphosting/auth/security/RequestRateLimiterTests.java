@@ -0,0 +1,49 @@
+package com.michael.cwphosting.auth.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestRateLimiterTests {
+
+	private final AtomicLong clock = new AtomicLong(1_000_000);
+	private final RequestRateLimiter limiter = new RequestRateLimiter(true, Map.of(
+			"POST /login", new RequestRateLimiter.Rule("login", 3, 6),
+			"POST /user/forgotten-password", new RequestRateLimiter.Rule("forgotten-password", 1, 1)
+	), 1000, 600, clock::get);
+
+	@Test
+	void burstIsAllowedThenRefillsAtTheConfiguredRate() {
+		RequestRateLimiter.Rule login = limiter.ruleFor("POST", "/login");
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limiter.tryAcquire(login, "10.0.0.1"));
+		}
+		long retryAfter = limiter.tryAcquire(login, "10.0.0.1");
+		assertEquals(10, retryAfter);
+
+		clock.addAndGet(9_999);
+		assertTrue(limiter.tryAcquire(login, "10.0.0.1") > 0);
+		clock.addAndGet(1);
+		assertEquals(0, limiter.tryAcquire(login, "10.0.0.1"));
+		assertTrue(limiter.tryAcquire(login, "10.0.0.1") > 0);
+	}
+
+	@Test
+	void bucketsAreSeparatePerAddressAndEndpoint() {
+		RequestRateLimiter.Rule reset = limiter.ruleFor("POST", "/user/forgotten-password/");
+		assertNotNull(reset);
+		assertEquals(0, limiter.tryAcquire(reset, "10.0.0.1"));
+		assertEquals(60, limiter.tryAcquire(reset, "10.0.0.1"));
+		assertEquals(0, limiter.tryAcquire(reset, "10.0.0.2"));
+		assertEquals(0, limiter.tryAcquire(limiter.ruleFor("POST", "/login"), "10.0.0.1"));
+
+		assertNull(limiter.ruleFor("GET", "/login"));
+		assertNull(limiter.ruleFor("POST", "/users"));
+	}
+}
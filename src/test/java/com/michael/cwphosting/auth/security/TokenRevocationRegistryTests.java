@@ -0,0 +1,65 @@
+package com.michael.cwphosting.auth.security;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.michael.cwphosting.auth.jwt.TokenUtil;
+import com.michael.cwphosting.auth.models.RevokedToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "jwt.revocation.poll-interval=100")
+class TokenRevocationRegistryTests {
+
+	@Autowired
+	private TokenRevocationRegistry registry;
+
+	@Autowired
+	private TokenUtil tokenUtil;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Test
+	void revocationWrittenByAnotherNodeIsPickedUp() throws Exception {
+		DecodedJWT token = tokenUtil.getDecodedToken(tokenUtil.generateToken(user("other-node@example.com")));
+		assertFalse(registry.isRevoked(token));
+
+		mongoTemplate.insert(RevokedToken.token(token.getId(), token.getSubject(), token.getExpiresAt()));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!registry.isRevoked(token) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertTrue(registry.isRevoked(token));
+	}
+
+	@Test
+	void revokeAllCoversTokensIssuedBefore() {
+		UserDetails user = user("revoke-all@example.com");
+		DecodedJWT token = tokenUtil.getDecodedToken(tokenUtil.generateToken(user));
+		registry.revokeAll(token.getSubject());
+
+		assertTrue(registry.isRevoked(token));
+		assertTrue(registry.revoke(tokenUtil.generateToken(user)));
+		assertFalse(registry.revoke(tokenUtil.generateToken(user, true)));
+	}
+
+	@Test
+	void revokeAllLeavesTokensIssuedLaterInTheSameSecond() throws Exception {
+		UserDetails user = user("revoke-all-later@example.com");
+		registry.revokeAll(user.getUsername());
+		Thread.sleep(5);
+
+		assertFalse(registry.isRevoked(tokenUtil.getDecodedToken(tokenUtil.generateToken(user))));
+	}
+
+	private UserDetails user(String username) {
+		return User.withUsername(username).password("unused").authorities("USER").build();
+	}
+}
@@ -0,0 +1,91 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class AccountTokenSweeperTests {
+
+	@Autowired
+	private AccountTokenSweeper sweeper;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Test
+	void tokensAreStoredAsDigestsAndRenewalReplacesThem() {
+		User user = newUser("renew-activation@example.com", LocalDateTime.now());
+		String first = userService.assignActivationToken(user);
+		userRepository.save(user);
+		assertNotEquals(first, user.getActivationToken());
+		assertEquals(user.getEmail(), userService.findUserByActivationToken(first).getEmail());
+
+		String second = userService.renewActivationToken(user.getEmail());
+		assertNull(userService.findUserByActivationToken(first));
+		assertTrue(userService.activateAccount(second));
+		assertNull(userService.renewActivationToken(user.getEmail()));
+		assertNull(userRepository.findUserByEmail(user.getEmail()).orElseThrow().getActivationExpires());
+	}
+
+	@Test
+	void neverActivatedAccountsAndExpiredResetTokensAreSwept() {
+		User stale = newUser("never-activated@example.com", LocalDateTime.now().minusYears(1));
+		userService.assignActivationToken(stale);
+		userRepository.save(stale);
+		User pending = newUser("awaiting-activation@example.com", LocalDateTime.now());
+		userService.assignActivationToken(pending);
+		userRepository.save(pending);
+		User forgetful = userRepository.save(newUser("expired-reset@example.com", LocalDateTime.now()));
+		userService.setForgottenPasswordToken(forgetful.getEmail(), "expired-reset", LocalDateTime.now().minusMinutes(1));
+
+		sweeper.sweep();
+
+		assertFalse(userRepository.findUserByEmail(stale.getEmail()).isPresent());
+		assertNotNull(userRepository.findUserByEmail(pending.getEmail()).orElseThrow().getActivationToken());
+		User reset = userRepository.findUserByEmail(forgetful.getEmail()).orElseThrow();
+		assertNull(reset.getForgottenPasswordToken());
+		assertNull(reset.getForgottenPasswordTokenExpire());
+	}
+
+	@Test
+	void accountsWithoutActivationExpiryAreSweptByCreationDate() {
+		User legacy = newUser("legacy-never-activated@example.com", LocalDateTime.now().minusYears(1));
+		legacy.setActivationToken("legacy-stale");
+		userRepository.save(legacy);
+		User recent = newUser("legacy-awaiting-activation@example.com", LocalDateTime.now());
+		recent.setActivationToken("legacy-recent");
+		userRepository.save(recent);
+		User activated = userRepository.save(newUser("legacy-activated@example.com", LocalDateTime.now().minusYears(1)));
+
+		sweeper.sweep();
+
+		assertFalse(userRepository.findUserByEmail(legacy.getEmail()).isPresent());
+		assertTrue(userRepository.findUserByEmail(recent.getEmail()).isPresent());
+		assertTrue(userRepository.findUserByEmail(activated.getEmail()).isPresent());
+	}
+
+	private User newUser(String email, LocalDateTime created) {
+		User user = new User();
+		user.setEmail(email);
+		user.setFirstName("First");
+		user.setLastName("Last");
+		user.setPassword("unused");
+		user.setCreated(created);
+		return user;
+	}
+}
@@ -0,0 +1,71 @@
+package com.michael.cwphosting.auth.services;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.michael.cwphosting.auth.models.OutboxMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import javax.mail.internet.MimeMessage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailSenderServiceTests {
+
+	@RegisterExtension
+	static GreenMailExtension smtp = new GreenMailExtension(ServerSetupTest.SMTP)
+			.withConfiguration(GreenMailConfiguration.aConfig().withUser("mailer", "secret"));
+
+	private final EmailSenderService sender = new EmailSenderService("127.0.0.1", ServerSetupTest.SMTP.getPort(),
+			"mailer", "secret", false, "CWP Hosting", "http://localhost/", 1, 60, 5);
+
+	@AfterEach
+	void close() {
+		sender.close();
+	}
+
+	@Test
+	void eachMessageOnlyGoesToItsOwnRecipient() throws Exception {
+		sender.send(message("first@example.com", "one"));
+		sender.send(message("second@example.com", "two"));
+
+		assertTrue(smtp.waitForIncomingEmail(2));
+		MimeMessage[] received = smtp.getReceivedMessages();
+		assertEquals(2, received.length);
+		assertEquals(1, received[1].getAllRecipients().length);
+		assertEquals("second@example.com", received[1].getAllRecipients()[0].toString());
+		assertTrue(GreenMailUtil.getBody(received[1]).contains("two"));
+	}
+
+	@Test
+	void messagesShareOnePooledConnection() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			sender.send(message("user" + i + "@example.com", "message " + i));
+		}
+
+		assertTrue(smtp.waitForIncomingEmail(5));
+		assertEquals(1, sender.getConnectionsOpened());
+	}
+
+	@Test
+	void deadConnectionIsReplaced() throws Exception {
+		sender.send(message("before@example.com", "before restart"));
+		smtp.stop();
+		Thread.sleep(2100);
+		smtp.start();
+
+		sender.send(message("after@example.com", "after restart"));
+
+		assertTrue(smtp.waitForIncomingEmail(1));
+		assertEquals("after@example.com", smtp.getReceivedMessages()[0].getAllRecipients()[0].toString());
+		assertEquals(2, sender.getConnectionsOpened());
+	}
+
+	private OutboxMessage message(String to, String text) {
+		return OutboxMessage.pending(to, "noreply@example.com", "Subject", "<p>" + text + "</p>", text);
+	}
+}
@@ -0,0 +1,42 @@
+package com.michael.cwphosting.auth.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmailTemplateTests {
+
+	@Test
+	void substitutesVariablesAndEscapesOnlyForHtml() {
+		EmailTemplate template = EmailTemplate.compile("<p>Dear {{ name }}</p><a href=\"{{link}}\">{{link}}</a>");
+		Map<String, String> values = Map.of("name", "Tom & \"Jerry\" <it's>", "link", "https://example.com/?a=1&b=2");
+
+		assertEquals("<p>Dear Tom &amp; &quot;Jerry&quot; &lt;it&#39;s&gt;</p>"
+						+ "<a href=\"https://example.com/?a=1&amp;b=2\">https://example.com/?a=1&amp;b=2</a>",
+				template.render(values, true));
+		assertEquals("<p>Dear Tom & \"Jerry\" <it's></p><a href=\"https://example.com/?a=1&b=2\">https://example.com/?a=1&b=2</a>",
+				template.render(values, false));
+	}
+
+	@Test
+	void missingAndNullVariablesRenderEmpty() {
+		EmailTemplate template = EmailTemplate.compile("Dear {{name}}, open {{link}}.");
+		Map<String, Object> values = new HashMap<>();
+		values.put("name", null);
+
+		assertEquals("Dear , open .", template.render(values, true));
+		assertEquals("Dear , open .", template.render(Collections.emptyMap(), false));
+	}
+
+	@Test
+	void compilesTextWithoutPlaceholdersAndRejectsUnclosedOnes() {
+		assertEquals("No variables {here}", EmailTemplate.compile("No variables {here}").render(Map.of(), true));
+		assertEquals("", EmailTemplate.compile("").render(Map.of(), false));
+		assertThrows(IllegalArgumentException.class, () -> EmailTemplate.compile("Dear {{name"));
+	}
+}
@@ -0,0 +1,68 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest(properties = "spring.user.login-activity.flush-interval=3600000")
+class LoginActivityBufferTests {
+
+	@Autowired
+	private LoginActivityBuffer buffer;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Test
+	void loginsAreCoalescedAndWrittenOnFlush() {
+		User user = newUser("activity@example.com");
+
+		buffer.record(user.getEmail(), "10.0.0.1");
+		buffer.record(user.getEmail(), "10.0.0.2");
+		assertNull(userRepository.findUserByEmail(user.getEmail()).orElseThrow().getLastLogin());
+
+		buffer.flush();
+		User flushed = userRepository.findUserByEmail(user.getEmail()).orElseThrow();
+		assertNotNull(flushed.getLastLogin());
+		assertEquals("10.0.0.2", flushed.getLastLoginIpAddress());
+	}
+
+	@Test
+	void failuresAfterTheLoginAreKept() {
+		User user = newUser("activity-failed@example.com");
+		buffer.record(user.getEmail(), "10.0.0.1");
+		setFailures(user.getEmail(), 1, LocalDateTime.now().plusSeconds(5));
+
+		buffer.drain();
+		User flushed = userRepository.findUserByEmail(user.getEmail()).orElseThrow();
+		assertNotNull(flushed.getLastLogin());
+		assertEquals(1, flushed.getLoginAttempts());
+	}
+
+	private User newUser(String email) {
+		User user = new User();
+		user.setEmail(email);
+		user.setCreated(LocalDateTime.now());
+		return userRepository.save(user);
+	}
+
+	private void setFailures(String email, int attempts, LocalDateTime lastAttempt) {
+		mongoTemplate.updateFirst(new Query(Criteria.where("email").is(email)),
+				new Update().set("loginAttempts", attempts).set("lastLoginAttempt", lastAttempt), User.class);
+	}
+}
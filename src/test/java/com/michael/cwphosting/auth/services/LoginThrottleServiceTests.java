@@ -0,0 +1,116 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.user.login-activity.flush-interval=3600000")
+class LoginThrottleServiceTests {
+
+	private static final long WINDOW = 3600;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private LoginActivityBuffer loginActivityBuffer;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private final AtomicLong clock = new AtomicLong(System.currentTimeMillis() / 1000);
+
+	@Test
+	void accountIsBlockedAfterTheFreeAttemptsForFiveMinutesPerExcessAttempt() {
+		LoginThrottleService throttle = newThrottle();
+		String email = newUser("throttle-block@example.com");
+		for (int i = 0; i < 3; i++) {
+			assertTrue(throttle.recordFailure(email, null));
+			assertFalse(throttle.isBlocked(email, null));
+		}
+		throttle.recordFailure(email, null);
+		assertTrue(throttle.isBlocked(email, null));
+		assertEquals(5, throttle.getWaitTime(email, null));
+
+		throttle.recordFailure(email, null);
+		assertEquals(10, throttle.getWaitTime(email, null));
+		clock.addAndGet(10 * 60);
+		assertFalse(throttle.isBlocked(email, null));
+		assertEquals(5, storedAttempts(email));
+	}
+
+	@Test
+	void storedAttemptsBlockOnAFreshNode() {
+		String email = newUser("throttle-restart@example.com");
+		LoginThrottleService first = newThrottle();
+		for (int i = 0; i < 4; i++) first.recordFailure(email, null);
+
+		LoginThrottleService second = newThrottle();
+		assertTrue(second.isBlocked(email, null));
+		assertEquals(5, second.getWaitTime(email, null));
+	}
+
+	@Test
+	void failuresAfterAQuietWindowStartOver() {
+		LoginThrottleService throttle = newThrottle();
+		String email = newUser("throttle-window@example.com");
+		for (int i = 0; i < 5; i++) throttle.recordFailure(email, null);
+		assertTrue(throttle.isBlocked(email, null));
+
+		clock.addAndGet(WINDOW + 1);
+		assertFalse(throttle.isBlocked(email, null));
+		throttle.recordFailure(email, null);
+		assertEquals(1, storedAttempts(email));
+		throttle.recordFailure(email, null);
+		assertEquals(2, storedAttempts(email));
+		assertFalse(newThrottle().isBlocked(email, null));
+	}
+
+	@Test
+	void successClearsTheCounterBeforeTheNextFailure() {
+		LoginThrottleService throttle = newThrottle();
+		String email = newUser("throttle-success@example.com");
+		for (int i = 0; i < 3; i++) throttle.recordFailure(email, "10.0.0.1");
+
+		throttle.recordSuccess(email, "10.0.0.1");
+		assertEquals(0, storedAttempts(email));
+		throttle.recordFailure(email, "10.0.0.1");
+		assertFalse(throttle.isBlocked(email, "10.0.0.1"));
+		assertEquals(1, storedAttempts(email));
+		assertFalse(newThrottle().isBlocked(email, null));
+	}
+
+	@Test
+	void addressIsBlockedAcrossAccounts() {
+		LoginThrottleService throttle = newThrottle();
+		for (int i = 0; i < 21; i++) throttle.recordFailure("throttle-unknown-" + i + "@example.com", "10.0.0.99");
+		assertTrue(throttle.isBlocked(null, "10.0.0.99"));
+		assertTrue(throttle.isBlocked("throttle-other@example.com", "10.0.0.99"));
+		assertFalse(throttle.isBlocked("throttle-other@example.com", "10.0.0.98"));
+	}
+
+	private LoginThrottleService newThrottle() {
+		return new LoginThrottleService(mongoTemplate, loginActivityBuffer, WINDOW, 1000, 20, clock::get);
+	}
+
+	private String newUser(String email) {
+		User user = new User();
+		user.setEmail(email);
+		user.setCreated(LocalDateTime.now());
+		return userRepository.save(user).getEmail();
+	}
+
+	private int storedAttempts(String email) {
+		return userRepository.findUserByEmail(email).orElseThrow().getLoginAttempts();
+	}
+}
@@ -0,0 +1,88 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.jwt.resource.UserImportReport;
+import com.michael.cwphosting.auth.models.OutboxMessage;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.repository.OutboxMessageRepository;
+import com.michael.cwphosting.auth.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.user.import.batch-size=2")
+class UserImportServiceTests {
+
+	@Autowired
+	private UserImportServiceInterface userImportService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private OutboxMessageRepository outboxMessageRepository;
+
+	@Test
+	void ndjsonRowsAreReportedInOrderAcrossBatches() throws Exception {
+		String upload = String.join("\n",
+				"{\"firstName\":\"Ann\",\"email\":\"import-one@example.com\",\"password\":\"Secret#123\"}",
+				"{\"email\":\"not-an-email\",\"password\":\"Secret#123\"}",
+				"{\"email\":\"admin@example.com\",\"password\":\"Secret#123\"}",
+				"",
+				"{\"email\":\"import-one@example.com\",\"password\":\"Secret#123\"}",
+				"{broken",
+				"{\"email\":\"import-two@example.com\",\"password\":\"Secret#123\",\"city\":\"Harare\"}");
+
+		UserImportReport report = importUsers(upload, UserImportServiceInterface.Format.NDJSON);
+
+		assertEquals(List.of(UserImportReport.Status.CREATED, UserImportReport.Status.INVALID, UserImportReport.Status.DUPLICATE,
+				UserImportReport.Status.DUPLICATE, UserImportReport.Status.INVALID, UserImportReport.Status.CREATED), statuses(report));
+		assertEquals(List.of(1, 2, 3, 4, 5, 6), report.getRows().stream().map(UserImportReport.Row::getRow).collect(Collectors.toList()));
+		assertEquals(2, report.getCreated());
+
+		User created = userRepository.findUserByEmail("import-two@example.com").orElseThrow();
+		assertNotEquals("Secret#123", created.getPassword());
+		assertEquals("Harare", created.getAddress().getCity());
+		assertEquals("USER", created.getRoles().iterator().next().getName());
+		assertTrue(created.getActivationToken() != null);
+
+		// the row without a first name still gets its activation mail, greeted by the email's local part
+		List<OutboxMessage> mails = outboxMessageRepository.findAll().stream()
+				.filter(message -> message.getTo().equals("import-one@example.com") || message.getTo().equals("import-two@example.com"))
+				.collect(Collectors.toList());
+		assertEquals(List.of("import-one@example.com", "import-two@example.com"),
+				mails.stream().map(OutboxMessage::getTo).sorted().collect(Collectors.toList()));
+		assertTrue(mails.stream().anyMatch(message -> message.getTextBody().contains("import-two")));
+		assertEquals(null, report.getRows().get(5).getMessage());
+	}
+
+	@Test
+	void csvHandlesQuotedFieldsAndShortRecords() throws Exception {
+		String upload = "email,password,firstName,addressLine1\r\n"
+				+ "import-csv@example.com,Secret#123,\"Smith, \"\"Jo\"\"\",\"12 Main\nSuite 4\"\r\n"
+				+ "import-short@example.com,Secret#123\r\n";
+
+		UserImportReport report = importUsers(upload, UserImportServiceInterface.Format.CSV);
+
+		assertEquals(List.of(UserImportReport.Status.CREATED, UserImportReport.Status.INVALID), statuses(report));
+		User created = userRepository.findUserByEmail("import-csv@example.com").orElseThrow();
+		assertEquals("Smith, \"Jo\"", created.getFirstName());
+		assertEquals("12 Main\nSuite 4", created.getAddress().getAddressLine1());
+	}
+
+	private UserImportReport importUsers(String upload, UserImportServiceInterface.Format format) throws Exception {
+		return userImportService.importUsers(new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)), format);
+	}
+
+	private static List<UserImportReport.Status> statuses(UserImportReport report) {
+		return report.getRows().stream().map(UserImportReport.Row::getStatus).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,103 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.jwt.resource.UserListRequest;
+import com.michael.cwphosting.auth.jwt.resource.UserPageResponse;
+import com.michael.cwphosting.auth.models.Role;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.models.UserSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "spring.user.export.batch-size=2")
+class UserListingServiceTests {
+
+	@Autowired
+	private UserListingServiceInterface userListingService;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Test
+	void pagesCrossPageBoundariesInBothSorts() {
+		LocalDateTime now = LocalDateTime.of(2021, 11, 20, 10, 0);
+		List<String> inserted = insert("paging", now.plusHours(3), now.plusHours(1), now.plusHours(1), now, now.plusHours(2));
+
+		assertEquals(inserted, emails("paging", "id", 2));
+		assertEquals(List.of(inserted.get(3), inserted.get(1), inserted.get(2), inserted.get(4), inserted.get(0)),
+				emails("paging", "created", 2));
+	}
+
+	@Test
+	void usersWithoutCreationDateSortFirstAndPageThrough() {
+		LocalDateTime now = LocalDateTime.of(2021, 11, 20, 10, 0);
+		List<String> inserted = insert("no-created", now.plusHours(1), null, now, null);
+
+		assertEquals(List.of(inserted.get(1), inserted.get(3), inserted.get(2), inserted.get(0)), emails("no-created", "created", 1));
+		assertEquals(List.of(inserted.get(1), inserted.get(3), inserted.get(2), inserted.get(0)), emails("no-created", "created", 3));
+	}
+
+	@Test
+	void exportFlushesOncePerBatch() throws Exception {
+		LocalDateTime now = LocalDateTime.of(2021, 11, 20, 10, 0);
+		insert("export", now, now, now, now, now);
+		int[] flushes = new int[1];
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void flush() {
+				flushes[0]++;
+			}
+		};
+		UserListRequest request = new UserListRequest();
+		request.setRole("export");
+
+		assertEquals(5, userListingService.exportUsers(request, out));
+		assertEquals(5, out.toString(StandardCharsets.UTF_8).split("\n").length);
+		// two full batches, then the rest when the generator is closed
+		assertEquals(3, flushes[0]);
+	}
+
+	/**
+	 * Inserts one user per creation date in the given order, all with a role of their own so the listings only see them.
+	 */
+	private List<String> insert(String role, LocalDateTime... created) {
+		List<String> emails = new ArrayList<>();
+		for (int i = 0; i < created.length; i++) {
+			User user = new User();
+			user.setEmail(role + "-" + i + "@example.com");
+			user.setCreated(created[i]);
+			user.getRoles().add(new Role(role));
+			mongoTemplate.insert(user);
+			emails.add(user.getEmail());
+		}
+		return emails;
+	}
+
+	private List<String> emails(String role, String sort, int limit) {
+		List<UserSummary> users = new ArrayList<>();
+		String cursor = null;
+		do {
+			UserListRequest request = new UserListRequest();
+			request.setRole(role);
+			request.setSort(sort);
+			request.setLimit(limit);
+			request.setCursor(cursor);
+			UserPageResponse page = userListingService.listUsers(request);
+			assertTrue(page.getItems().size() <= limit);
+			users.addAll(page.getItems());
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		return users.stream().map(UserSummary::getEmail).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,125 @@
+package com.michael.cwphosting.auth.services;
+
+import com.michael.cwphosting.auth.models.Address;
+import com.michael.cwphosting.auth.models.Role;
+import com.michael.cwphosting.auth.models.User;
+import com.michael.cwphosting.auth.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class UserServiceUpdateTests {
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private PasswordEncoder passwordEncoder;
+
+	@Test
+	void onlyChangedFieldsAreWrittenAndAConcurrentChangeIsRetried() {
+		User user = newUser("partial-update@example.com");
+		AtomicInteger calls = new AtomicInteger();
+
+		User updated = userService.updateUser(user.getEmail(), current -> {
+			if (calls.incrementAndGet() == 1) {
+				mongoTemplate.updateFirst(byEmail(user.getEmail()), new Update().set("lastName", "Changed").set("loginAttempts", 3), User.class);
+			}
+			current.setFirstName("Updated");
+			current.setSuspended(true);
+		});
+
+		assertEquals(2, calls.get());
+		assertEquals("Updated", updated.getFirstName());
+		assertEquals("Changed", updated.getLastName());
+		assertEquals(3, updated.getLoginAttempts());
+		assertTrue(updated.isSuspended());
+		assertEquals(1, updated.getSecurityVersion());
+		assertEquals(user.getVersion() + 2, updated.getVersion());
+	}
+
+	@Test
+	void wholeUserUpdateKeepsBookkeepingFields() {
+		User stale = newUser("stale-update@example.com");
+		mongoTemplate.updateFirst(byEmail(stale.getEmail()), new Update().set("loginAttempts", 2), User.class);
+
+		stale.setPhoneNumber("0123");
+		User updated = userService.updateUser(stale);
+
+		assertEquals("0123", updated.getPhoneNumber());
+		assertEquals(2, updated.getLoginAttempts());
+	}
+
+	@Test
+	void nestedChangesAreWritten() {
+		User user = newUser("nested-update@example.com");
+		mongoTemplate.updateFirst(byEmail(user.getEmail()), new Update().set("address", new Address("ZW", "Harare", "1 Main", null, null)), User.class);
+
+		User updated = userService.updateUser(user.getEmail(), current -> {
+			current.getAddress().setCity("Bulawayo");
+			current.getRoles().add(new Role("ADMIN"));
+		});
+
+		assertEquals("Bulawayo", updated.getAddress().getCity());
+		assertEquals("ZW", updated.getAddress().getCountry());
+		assertEquals(1, updated.getRoles().size());
+		assertEquals(1, updated.getSecurityVersion());
+	}
+
+	@Test
+	void resetTokenCanOnlyBeUsedOnce() {
+		User user = newUser("reset-once@example.com");
+		userService.setForgottenPasswordToken(user.getEmail(), "reset-token", LocalDateTime.now().plusMinutes(5));
+
+		assertTrue(userService.resetPassword(user.getEmail(), "reset-token", "Secret#456"));
+		assertFalse(userService.resetPassword(user.getEmail(), "reset-token", "Secret#789"));
+
+		User reset = userRepository.findUserByEmail(user.getEmail()).orElseThrow();
+		assertTrue(passwordEncoder.matches("Secret#456", reset.getPassword()));
+		assertNull(reset.getForgottenPasswordToken());
+	}
+
+	@Test
+	void activationClearsTheToken() {
+		User user = newUser("activate@example.com");
+		assertFalse(userService.activateAccount(user.getActivationToken()));
+		assertTrue(userService.activateAccount("activation-" + user.getEmail()));
+		assertFalse(userService.activateAccount("activation-" + user.getEmail()));
+		assertNull(userRepository.findUserByEmail(user.getEmail()).orElseThrow().getActivationToken());
+	}
+
+	private User newUser(String email) {
+		User user = new User();
+		user.setEmail(email);
+		user.setFirstName("First");
+		user.setLastName("Last");
+		user.setPassword("unused");
+		user.setActivationToken(User.digest("activation-" + email));
+		user.setCreated(LocalDateTime.now());
+		return userRepository.save(user);
+	}
+
+	private static Query byEmail(String email) {
+		return new Query(Criteria.where("email").is(email));
+	}
+}
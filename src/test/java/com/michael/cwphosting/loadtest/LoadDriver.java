@@ -0,0 +1,202 @@
+package com.michael.cwphosting.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for a running instance (usually started with the {@code inmemory} profile).
+ * Requests are issued on a fixed schedule regardless of how fast responses come back, and latency is measured
+ * from the time a request was due, so a stalled server shows up in the percentiles instead of lowering the rate.
+ *
+ * <pre>
+ * --url http://127.0.0.1:8080   --rate 200 (requests/s)   --duration 60 (s)   --warmup 10 (s)
+ * --users 50                    --mix login=10,refresh=15,get=70,failed=5
+ * </pre>
+ */
+public class LoadDriver {
+
+	enum Operation { LOGIN, REFRESH, GET, FAILED }
+
+	private static final String PASSWORD = "Load#Test1";
+	private static final String ADMIN_EMAIL = "admin@example.com";
+	private static final String ADMIN_PASSWORD = "password";
+
+	private final String url;
+	private final HttpClient client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(5))
+			.build();
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final List<String> users = new ArrayList<>();
+	private final Map<String, String> refreshTokens = new ConcurrentHashMap<>();
+	private volatile String adminAccessToken;
+
+	private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+	private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+	private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+	private final AtomicLong inFlight = new AtomicLong();
+	private volatile boolean measuring;
+
+	LoadDriver(String url) {
+		this.url = url;
+		for (Operation operation : Operation.values()) {
+			recorders.put(operation, new Recorder(TimeUnit.MINUTES.toMicros(1), 3));
+			errors.put(operation, new LongAdder());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>(Map.of("url", "http://127.0.0.1:8080", "rate", "200",
+				"duration", "60", "warmup", "10", "users", "50", "mix", "login=10,refresh=15,get=70,failed=5"));
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+		}
+		LoadDriver driver = new LoadDriver(options.get("url"));
+		driver.seed(Integer.parseInt(options.get("users")));
+		driver.run(Integer.parseInt(options.get("rate")), Integer.parseInt(options.get("warmup")),
+				Integer.parseInt(options.get("duration")), mix(options.get("mix")));
+	}
+
+	void seed(int count) throws Exception {
+		adminAccessToken = login(ADMIN_EMAIL, ADMIN_PASSWORD).get("accessToken").asText();
+		for (int i = 0; i < count; i++) {
+			String email = "load-user-" + i + "@example.com";
+			String body = mapper.writeValueAsString(Map.of("firstName", "Load", "lastName", "User" + i,
+					"email", email, "phoneNumber", "0123456789", "password", PASSWORD));
+			HttpResponse<String> signUp = client.send(HttpRequest.newBuilder(URI.create(url + "/user"))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+			if (signUp.statusCode() != 201 && !signUp.body().contains("already")) {
+				throw new IllegalStateException("Sign up failed for " + email + ": " + signUp.statusCode() + " " + signUp.body());
+			}
+			refreshTokens.put(email, login(email, PASSWORD).get("refreshToken").asText());
+			users.add(email);
+		}
+		System.out.printf("Seeded %d users%n", users.size());
+	}
+
+	void run(int rate, int warmupSeconds, int durationSeconds, Operation[] mix) throws InterruptedException {
+		long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+		long start = System.nanoTime();
+		long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+		long sent = 0;
+
+		for (long due = start; due < end; due += interval) {
+			long wait = due - System.nanoTime();
+			if (wait > 0) LockSupport.parkNanos(wait);
+			if (!measuring && due >= measureFrom) {
+				recorders.values().forEach(Recorder::reset);
+				measuring = true;
+			}
+			issue(mix[ThreadLocalRandom.current().nextInt(mix.length)], due);
+			sent++;
+		}
+		long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (inFlight.get() > 0 && System.nanoTime() < drainUntil) Thread.sleep(10);
+		report(sent, durationSeconds);
+	}
+
+	private void issue(Operation operation, long due) {
+		HttpRequest request;
+		String user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+		switch (operation) {
+			case LOGIN:
+				request = loginRequest(user, PASSWORD);
+				break;
+			case FAILED:
+				request = loginRequest("nobody-" + ThreadLocalRandom.current().nextInt(1_000_000) + "@example.com", "Wrong#Pass1");
+				break;
+			case REFRESH:
+				request = HttpRequest.newBuilder(URI.create(url + "/token/refresh"))
+						.header("Authorization", "Bearer " + refreshTokens.get(user)).GET().build();
+				break;
+			default:
+				request = HttpRequest.newBuilder(URI.create(url + "/users?limit=20&fields=email,firstName,lastName"))
+						.header("Authorization", "Bearer " + adminAccessToken).GET().build();
+		}
+		inFlight.incrementAndGet();
+		CompletableFuture<HttpResponse<Void>> response = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+		response.whenComplete((result, failure) -> {
+			inFlight.decrementAndGet();
+			if (!measuring) return;
+			recorders.get(operation).recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due)));
+			int status = failure == null ? result.statusCode() : -1;
+			statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+			if (status != expectedStatus(operation)) errors.get(operation).increment();
+		});
+	}
+
+	private static int expectedStatus(Operation operation) {
+		return operation == Operation.FAILED ? 403 : 200;
+	}
+
+	private void report(long sent, int durationSeconds) {
+		System.out.printf("%nSent %d requests, %d still in flight%n%n", sent, inFlight.get());
+		System.out.printf("%-8s %9s %8s %9s %9s %9s %9s %9s %9s%n", "op", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+		Histogram total = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+		for (Operation operation : Operation.values()) {
+			Histogram histogram = recorders.get(operation).getIntervalHistogram();
+			total.add(histogram);
+			print(operation.name().toLowerCase(), histogram, errors.get(operation).sum(), durationSeconds);
+		}
+		print("all", total, errors.values().stream().mapToLong(LongAdder::sum).sum(), durationSeconds);
+		System.out.printf("%nStatus codes: %s%n", statuses);
+	}
+
+	private static void print(String name, Histogram histogram, long errors, int durationSeconds) {
+		System.out.printf("%-8s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(), errors,
+				histogram.getTotalCount() / (double) durationSeconds,
+				histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+				histogram.getMaxValue() / 1000.0);
+	}
+
+	private JsonNode login(String email, String password) throws Exception {
+		HttpResponse<String> response = client.send(loginRequest(email, password), HttpResponse.BodyHandlers.ofString());
+		if (response.statusCode() != 200) {
+			throw new IllegalStateException("Login failed for " + email + ": " + response.statusCode() + " " + response.body());
+		}
+		return mapper.readTree(response.body());
+	}
+
+	private HttpRequest loginRequest(String email, String password) {
+		String form = "email=" + URLEncoder.encode(email, StandardCharsets.UTF_8)
+				+ "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8);
+		return HttpRequest.newBuilder(URI.create(url + "/login"))
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form)).build();
+	}
+
+	private static Operation[] mix(String spec) {
+		List<Operation> weighted = new ArrayList<>();
+		for (String part : spec.split(",")) {
+			String[] pair = part.split("=");
+			Operation operation = Operation.valueOf(pair[0].trim().toUpperCase());
+			for (int i = 0; i < Integer.parseInt(pair[1].trim()); i++) weighted.add(operation);
+		}
+		return weighted.toArray(new Operation[0]);
+	}
+}
@@ -0,0 +1,35 @@
+package com.michael.cwphosting.startup;
+
+import com.michael.cwphosting.auth.models.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+class BackgroundIndexCreatorTests {
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Test
+	void mappedIndexesAreCreated() {
+		IndexOperations users = mongoTemplate.indexOps(User.class);
+		users.dropIndex("email");
+		assertFalse(hasIndex(users, "email"));
+
+		new BackgroundIndexCreator(mongoTemplate).createIndexes();
+
+		assertTrue(hasIndex(users, "email"));
+	}
+
+	private static boolean hasIndex(IndexOperations indexOperations, String field) {
+		return indexOperations.getIndexInfo().stream().anyMatch(index -> index.isIndexForFields(List.of(field)) && index.isUnique());
+	}
+}